@@ -0,0 +1,312 @@
+package feed;
+
+import java.util.Arrays;
+
+public class ApproxSolver implements FeedSolver {
+	/* Approximate answer, at least (1 - epsilon) of the best score, in time
+	 * that does not depend on H and hardly on the window, for windows too
+	 * big for the exact engines. The score / upperBound of every answer is
+	 * proven and carried by the FeedResult.
+	 *
+	 * The window is kept in ratio order in a RatioIndex and by score in a
+	 * ScoreIndex, and a reload only walks the front of them:
+	 * - the prefix in ratio order that fits, or the single best story: LB,
+	 *   with LB <= OPT. The Dantzig bound U >= OPT.
+	 * - with d = epsilon/2 a story is large when it scores more than T = d*LB.
+	 *   Large scores are scaled down by K = d*d*LB*LB/U, and an exact DP over
+	 *   the scaled scores gives the least height of every scaled score. Only
+	 *   the lightest U/(K*q) large stories of each scaled score q are needed,
+	 *   no solution holds more of them.
+	 * - every DP state is topped up with the longest prefix, in ratio order,
+	 *   of the small stories that fits, by binary search in prefix sums. The
+	 *   walk stops once the small stories are higher than H.
+	 * The best large part of OPT has fewer than U/T stories and loses less
+	 * than K each, at most d*LB together, and the small prefix is at most one
+	 * small story, d*LB, short of OPT's small part. So the loss is at most
+	 * epsilon*LB.
+	 *
+	 * A reload is O(log n) plus the stories walked: the prefix, the large
+	 * ones and the small ones interleaved with them, and the DP.
+	 * With epsilon <= 0, or when the DP would have more than MAX_CELLS cells,
+	 * the greedy answer is returned, which is at least half of U.
+	 * The answer does not follow the smallest-sid order of the exact engines.
+	 */
+	public static final double DEFAULT_EPSILON = 0.1;
+	public static final long MAX_CELLS = 1L << 24;
+	private StoryStore store;
+	private RatioIndex index;
+	private ScoreIndex scores;
+	private double epsilon;
+	private FeedResult last;
+	private int[] order;		// store positions of the prefix that fits, in ratio order
+	private int[] chosen;		// store positions of the answer
+	private int numChosen;
+	private int[] small;		// store positions of the walked small stories, in ratio order
+	private long[] sumHeight;	// prefix sums over small
+	private long[] sumScore;
+	private int[] large;		// store positions of the large stories, by score
+	private int[] bucketStart;
+	private long[] packed;		// large stories by scaled score: height << 32 | index in large
+	private int[] itemPos;		// the large stories kept for the DP
+	private int[] itemScaled;
+	private long[] minHeight;	// by scaled score, least height of a DP state
+	private long[] stateScore;	// its real score
+	private long[][] choice;	// by item, bit p set when the item was taken for state p
+	private long reloads;
+	private long fallbacks;
+	private double worstRatio = 1;
+	private int H;
+	
+	public ApproxSolver(StoryStore store, int H) {
+		this(store, H, DEFAULT_EPSILON);
+	}
+	
+	public ApproxSolver(StoryStore store, int H, double epsilon) {
+		this.store = store;
+		this.H = H;
+		this.epsilon = epsilon;
+		index = new RatioIndex(store, 16);
+		scores = new ScoreIndex(store, 16);
+		order = new int[16];
+		chosen = new int[16];
+		small = new int[16];
+		large = new int[16];
+		sumHeight = new long[17];
+		sumScore = new long[17];
+		packed = new long[16];
+		itemPos = new int[16];
+		itemScaled = new int[16];
+		minHeight = new long[0];
+		stateScore = new long[0];
+		choice = new long[0][];
+		last = new FeedResult(0, 0, new int[0]);
+	}
+	
+	public void addStory(int pos) {
+		index.insert(pos);
+		scores.insert(pos);
+	}
+	
+	public boolean expireStory(int pos) {
+		index.remove(pos);
+		scores.remove(pos);
+		return last.contains(store.getSid(pos));
+	}
+	
+	public FeedResult reload() {
+		int n = index.size();
+		if(order.length < n) {
+			int cap = index.capacity();
+			order = new int[cap];
+			chosen = new int[cap];
+			small = new int[cap];
+			large = new int[cap];
+			sumHeight = new long[cap + 1];
+			sumScore = new long[cap + 1];
+			packed = new long[cap];
+			itemPos = new int[cap];
+			itemScaled = new int[cap];
+		}
+		reloads++;
+		
+		// Dantzig bound from the prefix that fits, node is left at the critical story
+		long greedy = 0;
+		long room = H;
+		int crit = 0;
+		int node = index.first();
+		while(node >= 0 && store.getHeight(index.getPos(node)) <= room) {
+			int pos = index.getPos(node);
+			order[crit++] = pos;
+			room -= store.getHeight(pos);
+			greedy += store.getScore(pos);
+			node = index.next();
+		}
+		long upper = greedy;
+		if(node >= 0) {
+			int pos = index.getPos(node);
+			upper += room * store.getScore(pos) / store.getHeight(pos);
+		}
+		
+		// the prefix, or the best single story when that scores more
+		int single = scores.first();
+		while(single >= 0 && store.getHeight(scores.getPos(single)) > H) {
+			single = scores.next();
+		}
+		if(single >= 0 && store.getScore(scores.getPos(single)) > greedy) {
+			chosen[0] = scores.getPos(single);
+			numChosen = 1;
+			greedy = store.getScore(chosen[0]);
+		} else {
+			System.arraycopy(order, 0, chosen, 0, crit);
+			numChosen = crit;
+		}
+		
+		if(greedy > 0 && epsilon > 0 && !approximate(crit, node, greedy, upper)) {
+			fallbacks++;
+		}
+		
+		long score = 0;
+		int[] sids = new int[numChosen];
+		for(int i=0; i<numChosen; i++) {
+			sids[i] = store.getSid(chosen[i]);
+			score += store.getScore(chosen[i]);
+		}
+		Arrays.sort(sids);
+		if(upper > 0) {
+			worstRatio = Math.min(worstRatio, (double) score / upper);
+		}
+		last = new FeedResult((int) score, numChosen, sids, upper);
+		return last;
+	}
+	
+	private boolean approximate(int crit, int node, long lowerBound, long upper) {
+		/* the DP over scaled large scores plus small prefix; replaces chosen
+		 * when better than the greedy answer. false if the DP is too big.
+		 * The ratio walk goes on from node, the critical story.
+		 */
+		double d = epsilon / 2;
+		double threshold = d * lowerBound;
+		double K = Math.max(1, d * d * lowerBound * lowerBound / upper);
+		int maxScaled = (int) Math.min(Integer.MAX_VALUE - 1, (long) (upper / K));
+		
+		// small stories in ratio order with prefix sums, until they are higher than H
+		int numSmall = 0;
+		for(int i=0; i<crit; i++) {
+			numSmall = addSmall(order[i], numSmall, threshold);
+		}
+		for(; node >= 0 && sumHeight[numSmall] <= H; node = index.next()) {
+			numSmall = addSmall(index.getPos(node), numSmall, threshold);
+		}
+		
+		// large stories from the highest score down, bucketed by scaled score
+		if(bucketStart == null || bucketStart.length < maxScaled + 2) {
+			if((long) maxScaled + 2 > MAX_CELLS) return false;
+			bucketStart = new int[maxScaled + 2];
+		}
+		Arrays.fill(bucketStart, 0, maxScaled + 2, 0);
+		int numLarge = 0;
+		for(int t=scores.first(); t>=0; t=scores.next()) {
+			int pos = scores.getPos(t);
+			if(store.getScore(pos) <= threshold) break;
+			if(store.getHeight(pos) > H) continue;
+			large[numLarge++] = pos;
+			bucketStart[scaled(store.getScore(pos), K, maxScaled) + 1]++;
+		}
+		for(int q=0; q<=maxScaled; q++) {
+			bucketStart[q + 1] += bucketStart[q];
+		}
+		int[] fill = Arrays.copyOf(bucketStart, maxScaled + 1);
+		for(int i=0; i<numLarge; i++) {
+			int pos = large[i];
+			packed[fill[scaled(store.getScore(pos), K, maxScaled)]++] = (long) store.getHeight(pos) << 32 | i;
+		}
+		int numItems = 0;
+		for(int q=1; q<=maxScaled; q++) {
+			int from = bucketStart[q];
+			int to = bucketStart[q + 1];
+			int keep = Math.min(to - from, maxScaled / q);
+			if(keep < to - from) {
+				Arrays.sort(packed, from, to);
+			}
+			for(int k=from; k<from+keep; k++) {
+				itemPos[numItems] = large[(int) packed[k]];
+				itemScaled[numItems] = q;
+				numItems++;
+			}
+		}
+		if((long) numItems * (maxScaled + 1) > MAX_CELLS) return false;
+		
+		// least height per scaled score, 0/1 over the kept large stories
+		if(minHeight.length < maxScaled + 1) {
+			minHeight = new long[maxScaled + 1];
+			stateScore = new long[maxScaled + 1];
+		}
+		int words = (maxScaled >>> 6) + 1;
+		if(choice.length < numItems || (numItems > 0 && choice[0].length < words)) {
+			choice = new long[Math.max(numItems, choice.length)][words];
+		}
+		Arrays.fill(minHeight, 0, maxScaled + 1, Long.MAX_VALUE);
+		minHeight[0] = 0;
+		stateScore[0] = 0;
+		int reach = 0;
+		for(int j=0; j<numItems; j++) {
+			int pos = itemPos[j];
+			int q = itemScaled[j];
+			long h = store.getHeight(pos);
+			long s = store.getScore(pos);
+			long[] bits = choice[j];
+			Arrays.fill(bits, 0, words, 0);
+			reach = Math.min(maxScaled, reach + q);
+			for(int p=reach; p>=q; p--) {
+				long base = minHeight[p - q];
+				if(base == Long.MAX_VALUE || base + h > H) continue;
+				if(base + h < minHeight[p] || (base + h == minHeight[p] &&
+						stateScore[p - q] + s > stateScore[p])) {
+					minHeight[p] = base + h;
+					stateScore[p] = stateScore[p - q] + s;
+					bits[p >>> 6] |= 1L << p;
+				}
+			}
+		}
+		
+		// top every state up with the small prefix that fits
+		long bestScore = -1;
+		int bestState = 0;
+		for(int p=0; p<=reach; p++) {
+			if(minHeight[p] == Long.MAX_VALUE) continue;
+			long room = H - minHeight[p];
+			int lo = 0;
+			int hi = numSmall;
+			while(lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if(sumHeight[mid] <= room) lo = mid;
+				else hi = mid - 1;
+			}
+			long total = stateScore[p] + sumScore[lo];
+			if(total > bestScore) {
+				bestScore = total;
+				bestState = p;
+			}
+		}
+		if(bestScore <= lowerBound) return true;
+		
+		/* rebuild that state, then fill the room left with the walked small 
+		 * ones in ratio order, skipping what does not fit. That takes the 
+		 * prefix it was scored with first, and maybe more. */
+		numChosen = 0;
+		long room = H;
+		int p = bestState;
+		for(int j=numItems-1; j>=0 && p > 0; j--) {
+			if((choice[j][p >>> 6] & (1L << p)) != 0) {
+				chosen[numChosen++] = itemPos[j];
+				room -= store.getHeight(itemPos[j]);
+				p -= itemScaled[j];
+			}
+		}
+		for(int k=0; k<numSmall; k++) {
+			int h = store.getHeight(small[k]);
+			if(h <= room) {
+				chosen[numChosen++] = small[k];
+				room -= h;
+			}
+		}
+		return true;
+	}
+	
+	private int addSmall(int pos, int numSmall, double threshold) {
+		if(store.getScore(pos) > threshold || store.getHeight(pos) > H) return numSmall;
+		small[numSmall] = pos;
+		sumHeight[numSmall + 1] = sumHeight[numSmall] + store.getHeight(pos);
+		sumScore[numSmall + 1] = sumScore[numSmall] + store.getScore(pos);
+		return numSmall + 1;
+	}
+	
+	private static int scaled(int score, double K, int maxScaled) {
+		return (int) Math.min(maxScaled, (long) (score / K));
+	}
+	
+	public String getStats() {
+		return "approx: epsilon: " + epsilon + " reloads: " + reloads + " greedy fallbacks: " +
+				fallbacks + " worst score/bound: " + String.format("%.5f", worstRatio);
+	}
+}
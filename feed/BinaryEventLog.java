@@ -0,0 +1,119 @@
+package feed;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class BinaryEventLog {
+	/* Binary event log, a few bytes per event instead of a text line:
+	 *   "FLOG"            magic
+	 *   int32 N           number of events, big endian
+	 *   varint W, H
+	 *   N events          varint tag, and for a story varint score, height
+	 * The tag is the zigzag time delta to the event before (the first to 0)
+	 * shifted left by one, with the low bit 0 for a story and 1 for a reload.
+	 * Varints are little endian base 128. Lines the text parser skips are not
+	 * written, so N counts events and the log replays to the same output.
+	 *
+	 *   java feed.BinaryEventLog -encode log.txt log.bin
+	 *   java feed.BinaryEventLog -decode log.bin log.txt
+	 * FeedPipeline reads a binary log from System.in with -binary.
+	 */
+	static final byte[] MAGIC = {'F', 'L', 'O', 'G'};
+	
+	/* write all events of the source to a binary log file, return the count */
+	public static int encode(EventSource source, Path file) throws Exception {
+		source.readHeader();
+		FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+			int count = 0;
+			int time = 0;
+			buf.put(MAGIC);
+			buf.putInt(0);	// N, patched at the end
+			putVarint(buf, source.getW() & 0xffffffffL);
+			putVarint(buf, source.getH() & 0xffffffffL);
+			while(source.next()) {
+				if(buf.remaining() < 16) {
+					drain(out, buf);
+				}
+				int delta = source.getTime() - time;
+				long zigzag = ((delta << 1) ^ (delta >> 31)) & 0xffffffffL;
+				time = source.getTime();
+				if(source.getType() == StoryStore.STORY) {
+					putVarint(buf, zigzag << 1);
+					putVarint(buf, source.getScore() & 0xffffffffL);
+					putVarint(buf, source.getHeight() & 0xffffffffL);
+				} else {
+					putVarint(buf, zigzag << 1 | 1);
+				}
+				count++;
+			}
+			drain(out, buf);
+			buf.putInt(count).flip();
+			out.write(buf, MAGIC.length);
+			return count;
+		} finally {
+			out.close();
+		}
+	}
+	
+	/* write all events of the source as the text input format */
+	public static int decode(EventSource source, OutputStream out) throws Exception {
+		source.readHeader();
+		Writer w = new BufferedWriter(new OutputStreamWriter(out), 1 << 16);
+		int count = 0;
+		w.write(source.getN() + " " + source.getW() + " " + source.getH() + "\n");
+		while(source.next()) {
+			if(source.getType() == StoryStore.STORY) {
+				w.write("S " + source.getTime() + " " + source.getScore() + " "
+						+ source.getHeight() + "\n");
+			} else {
+				w.write("R " + source.getTime() + "\n");
+			}
+			count++;
+		}
+		w.flush();
+		return count;
+	}
+	
+	private static void putVarint(ByteBuffer buf, long value) {
+		while((value & ~0x7fL) != 0) {
+			buf.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
+	
+	private static void drain(FileChannel out, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while(buf.hasRemaining()) {
+			out.write(buf);
+		}
+		buf.clear();
+	}
+	
+	public static void main(String args[]) throws Exception {
+		if(args.length != 3 || !(args[0].equals("-encode") || args[0].equals("-decode"))) {
+			throw new Exception("usage: BinaryEventLog -encode|-decode <in> <out>");
+		}
+		long start = System.nanoTime();
+		int count;
+		try(InputStream in = new FileInputStream(args[1])) {
+			if(args[0].equals("-encode")) {
+				count = encode(new EventParser(in), Paths.get(args[2]));
+			} else {
+				try(OutputStream out = new FileOutputStream(args[2])) {
+					count = decode(new BinaryEventReader(in), out);
+				}
+			}
+		}
+		System.err.println(count + " events, " + new File(args[1]).length() + " -> "
+				+ new File(args[2]).length() + " bytes in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
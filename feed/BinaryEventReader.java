@@ -0,0 +1,119 @@
+package feed;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class BinaryEventReader implements EventSource {
+	/* Reads the binary event log written by BinaryEventLog, see there for
+	 * the layout. One buffer, refilled with whatever the stream has when it
+	 * runs empty, so on a live pipe an event is decoded as soon as its last
+	 * byte is in. Every event of the log counts against N, there are no
+	 * skipped lines.
+	 */
+	private InputStream in;
+	private byte[] buf;
+	private int pos;
+	private int lim;
+	private int N;
+	private int W;
+	private int H;
+	private int count;
+	private byte type;
+	private int time;
+	private int score;
+	private int height;
+	
+	public BinaryEventReader(InputStream in) {
+		this(in, 1 << 16);
+	}
+	
+	public BinaryEventReader(InputStream in, int bufferSize) {
+		this.in = in;
+		buf = new byte[Math.max(bufferSize, 16)];
+	}
+	
+	public void readHeader() throws Exception {
+		for(int i=0; i<BinaryEventLog.MAGIC.length; i++) {
+			if((pos == lim && !fill()) || buf[pos++] != BinaryEventLog.MAGIC[i]) {
+				throw new Exception("input format wrong.");
+			}
+		}
+		for(int i=0; i<4; i++) {
+			if(pos == lim && !fill()) {
+				throw new Exception("input format wrong.");
+			}
+			N = N << 8 | (buf[pos++] & 0xff);
+		}
+		W = (int) readVarint();
+		H = (int) readVarint();
+	}
+	
+	public int getN() {
+		return N;
+	}
+	
+	public int getW() {
+		return W;
+	}
+	
+	public int getH() {
+		return H;
+	}
+	
+	public boolean next() throws IOException {
+		if(count == N) {
+			return false;
+		}
+		count++;
+		long tag = readVarint();
+		// the time is a zigzag delta to the event before, the low bit the type
+		int delta = (int) (tag >>> 1);
+		time += (delta >>> 1) ^ -(delta & 1);
+		if((tag & 1) == 0) {
+			type = StoryStore.STORY;
+			score = (int) readVarint();
+			height = (int) readVarint();
+		} else {
+			type = StoryStore.RELOAD;
+		}
+		return true;
+	}
+	
+	public byte getType() {
+		return type;
+	}
+	
+	public int getTime() {
+		return time;
+	}
+	
+	public int getScore() {
+		return score;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	private long readVarint() throws IOException {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if(pos == lim && !fill()) {
+				throw new EOFException("binary log ends in event " + count + " of " + N);
+			}
+			b = buf[pos++];
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while(b < 0);
+		return value;
+	}
+	
+	private boolean fill() throws IOException {
+		pos = 0;
+		lim = Math.max(in.read(buf, 0, buf.length), 0);
+		return lim > 0;
+	}
+}
@@ -0,0 +1,587 @@
+package feed;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BranchBoundSolver implements FeedSolver {
+	/* up bound used by findUpBound to cut branches */
+	public static final int DANTZIG = 0;
+	public static final int MARTELLO_TOTH = 1;
+	static boolean debug = false;
+	private StoryStore store;
+	private RatioIndex index;
+	private int[] nodes;		// index nodes in order of ratio, taken at recompute
+	private int[] stories;		// store positions of nodes
+	private int numStory;
+	private boolean[] inBest;	// by index node, the stories of best
+	private boolean[] fresh;	// by index node, added since the last search
+	private WordMask freshAt;	// by position in stories, the fresh ones
+	private int[] freshAfter;	// fresh stories from each position of stories on
+	private boolean warm;		// best is the answer of the last search, less fresh stories
+	private int[] nodeOf;		// index node of each live store position
+	private SolutionInfo best;
+	private Search search;
+	private FeedResult last;
+	private boolean recompute;
+	private int bound;
+	private ForkJoinPool pool;
+	private int splitDepth;
+	private AtomicInteger sharedScore;
+	private long recomputeCount;
+	private long warmCount;
+	private long taskCount;
+	private long nodeCount;
+	private long cutCount;
+	private long leafCount;
+	private int H;
+	
+	public BranchBoundSolver(StoryStore store, int H) {
+		this(store, H, MARTELLO_TOTH);
+	}
+	
+	public BranchBoundSolver(StoryStore store, int H, int bound) {
+		this(store, H, bound, null);
+	}
+	
+	public BranchBoundSolver(StoryStore store, int H, int bound, ForkJoinPool pool) {
+		/* with a pool of more than one thread the search tree is cut at a 
+		 * shallow depth into fork/join tasks, about 8 per thread so work 
+		 * stealing can even them out. The pool is the caller's and is shared, 
+		 * the solver never shuts it down.
+		 */
+		this.store = store;
+		this.H = H;
+		this.bound = bound;
+		if(pool != null && pool.getParallelism() > 1) {
+			this.pool = pool;
+			splitDepth = 32 - Integer.numberOfLeadingZeros(pool.getParallelism() * 8 - 1);
+		}
+		sharedScore = new AtomicInteger();
+		index = new RatioIndex(store, 16);
+		nodes = new int[16];
+		stories = new int[16];
+		inBest = new boolean[16];
+		fresh = new boolean[16];
+		freshAt = new WordMask(16);
+		freshAfter = new int[17];
+		nodeOf = new int[16];
+		numStory = 0;
+		best = new SolutionInfo(0);
+		search = new Search(0);
+		last = new FeedResult(0, 0, new int[0]);
+		recompute = true;
+	}
+	
+	public void addStory(int story) {
+		int node = index.insert(story);
+		recompute = true;
+		if(debug) {
+			System.out.println("Adding Story: " + store.getSid(story));
+		}
+		if(node >= inBest.length) {
+			inBest = Arrays.copyOf(inBest, index.capacity());
+			fresh = Arrays.copyOf(fresh, index.capacity());
+		}
+		fresh[node] = true;
+		if(nodeOf.length < store.capacity()) {
+			growNodeOf();
+		}
+		nodeOf[story & (nodeOf.length-1)] = node;
+		
+		// keep best a valid solution so it can be used to cut branches
+		if(store.getHeight(story) + best.height <= H) {
+			best.height += store.getHeight(story);
+			best.score += store.getScore(story);
+			best.size++;
+			inBest[node] = true;
+		}
+	}
+	
+	public boolean expireStory(int story) {
+		/* the store is the expiry queue, and each live position points back 
+		 * to its node so no search of the window is needed.
+		 */
+		int node = nodeOf[story & (nodeOf.length-1)];
+		index.removeNode(node);
+		if(inBest[node]) {
+			// only when the story picked is removed should we recompute
+			best.height -= store.getHeight(story);
+			best.score -= store.getScore(story);
+			best.size--;
+			inBest[node] = false;
+			recompute = true;
+			warm = false;
+			// the sids of the last answer, if not read yet, while the story is still there
+			last.getSids();
+			return true;
+		}
+		return false;
+	}
+	
+	private void growNodeOf() {
+		/* follow the ring of the store, live positions keep their node */
+		int[] old = nodeOf;
+		nodeOf = new int[store.capacity()];
+		for(int pos=store.head(); pos<store.tail(); pos++) {
+			nodeOf[pos & (nodeOf.length-1)] = old[pos & (old.length-1)];
+		}
+	}
+	
+	public FeedResult reload() {
+		if(recompute) {
+			// lay the window out in order of ratio for the search
+			if(nodes.length < index.size()) {
+				nodes = new int[index.capacity()];
+				stories = new int[index.capacity()];
+			}
+			numStory = index.toArray(nodes);
+			best.mask.ensureCapacity(numStory);
+			best.mask.clear(0, numStory);
+			if(freshAfter.length <= numStory) {
+				freshAfter = new int[nodes.length + 1];
+			}
+			freshAt.ensureCapacity(numStory);
+			freshAt.clear(0, numStory);
+			freshAfter[numStory] = 0;
+			for(int i=numStory-1; i>=0; i--) {
+				freshAfter[i] = freshAfter[i+1];
+				if(fresh[nodes[i]]) {
+					freshAt.set(i);
+					freshAfter[i]++;
+				}
+			}
+			for(int i=0; i<numStory; i++) {
+				stories[i] = index.getPos(nodes[i]);
+				if(inBest[nodes[i]]) {
+					best.mask.set(i);
+				}
+			}
+			
+			/* warm start: since the last search stories were only added, or 
+			 * removed without touching its answer. That answer is still the 
+			 * best of the stories that are not fresh, so every other solution 
+			 * worth looking at holds a fresh story, and the search cuts the 
+			 * branches that can not get one. best is the old answer plus the 
+			 * fresh stories that fit on top of it; the old answer alone is 
+			 * kept aside, it is the better one when fresh stories add no score. 
+			 */
+			SolutionInfo previous = null;
+			if(warm) {
+				previous = withoutFresh(best);
+				warmCount++;
+			}
+			recomputeCount++;
+			if(pool != null && numStory > splitDepth + 8) {
+				findBestParallel();
+			} else {
+				search.reset(0, best, false);
+				search.findBest();
+				addCounts(search);
+			}
+			if(previous != null && isBetter(previous, best)) {
+				best = previous;
+			}
+			recompute = false;
+			warm = true;
+			for(int i=0; i<numStory; i++) {
+				inBest[nodes[i]] = best.mask.get(i);
+				fresh[nodes[i]] = false;
+			}
+			
+			// the sids are only retrieved when read, from this search's best
+			SolutionInfo found = best;
+			int size = best.size;
+			long gen = recomputeCount;
+			last = new FeedResult(best.score, size, () -> {
+				if(gen != recomputeCount) {
+					throw new IllegalStateException("sids of a reload read after the next search");
+				}
+				int[] sids = getSolutionSid(found, size);
+				Arrays.sort(sids);
+				return sids;
+			});
+		}
+		
+		return last;
+	}
+	
+	public String getStats() {
+		return (bound == DANTZIG ? "bb-dantzig" : "bb") + ": recomputes: " + recomputeCount + 
+				" warm: " + warmCount + " nodes: " + nodeCount + " cut: " + cutCount + " leaves: " + leafCount + 
+				(pool != null ? " tasks: " + taskCount : "");
+	}
+	
+	private void findBestParallel() {
+		/* every task owns the stories below its depth, with the ones above 
+		 * fixed by the path to it, and searches them with its own Search. 
+		 * The best score found so far is shared through sharedScore so a task 
+		 * cuts the branches another one has already beaten. A branch is only 
+		 * cut when its up bound is below a score that exists, so the task 
+		 * holding the best solution always finds it, and the task results are 
+		 * merged with the same order as the leaves of the search. The answer 
+		 * does not depend on the timing of the threads.
+		 */
+		sharedScore.set(best.score);
+		SolutionInfo root = new SolutionInfo(numStory);
+		SolutionInfo result = pool.invoke(new SearchTask(root, 0));
+		if(result != null && isBetter(result, best)) {
+			best.score = result.score;
+			best.size = result.size;
+			best.height = result.height;
+			best.mask.copyFrom(result.mask, numStory);
+		}
+	}
+	
+	private SolutionInfo withoutFresh(SolutionInfo solution) {
+		SolutionInfo old = new SolutionInfo(numStory);
+		int pos = -1;
+		while((pos = solution.mask.nextSetBit(pos+1, numStory)) >= 0) {
+			if(!freshAt.get(pos)) {
+				old.mask.set(pos);
+				old.height += store.getHeight(stories[pos]);
+				old.score += store.getScore(stories[pos]);
+				old.size++;
+			}
+		}
+		return old;
+	}
+	
+	private boolean noFreshLeft(SolutionInfo cur, int start) {
+		// on a warm start, a branch without a fresh story and none to come is cut
+		return warm && cur.fresh == 0 && freshAfter[start] == 0;
+	}
+	
+	private synchronized void addCounts(Search s) {
+		nodeCount += s.nodes;
+		cutCount += s.cuts;
+		leafCount += s.leaves;
+	}
+	
+	private boolean isBetter(SolutionInfo a, SolutionInfo b) {
+		if(a.score != b.score) return a.score > b.score;
+		if(a.size != b.size) return a.size < b.size;
+		return isSidSmaller(a, b);
+	}
+	
+	private int[] getSolutionSid(SolutionInfo solution, int size) {
+		/* from the solution mask, get the stories' sid. size is the one of the 
+		 * mask, best.size already counts the stories added greedily since */
+		int[] sids = new int[size];
+		int pos = -1;
+		int count = 0;
+		while((pos = solution.mask.nextSetBit(pos+1, numStory)) >= 0) {
+			sids[count++] = store.getSid(stories[pos]);
+		}
+		return sids;
+	}
+	
+	private boolean isSidSmaller(SolutionInfo a, SolutionInfo b) {
+		/* a and b have the same size. Their sorted sid lists first differ at 
+		 * the smallest sid that is in only one of them, and the list holding 
+		 * it is the smaller one. So only the positions where the masks differ 
+		 * are visited, without building or sorting any list.
+		 */
+		int minSid = Integer.MAX_VALUE;
+		boolean smaller = false;
+		int pos = -1;
+		while((pos = a.mask.nextDifferentBit(b.mask, pos+1, numStory)) >= 0) {
+			int sid = store.getSid(stories[pos]);
+			if(sid < minSid) {
+				minSid = sid;
+				smaller = a.mask.get(pos);
+			}
+		}
+		return smaller;
+	}
+	
+	private class SearchTask extends RecursiveTask<SolutionInfo> {
+		/* the stories before depth are fixed in prefix. Returns the best 
+		 * solution below it, or null if every branch was cut.
+		 */
+		private static final long serialVersionUID = 1L;
+		private SolutionInfo prefix;
+		private int depth;
+		
+		SearchTask(SolutionInfo prefix, int depth) {
+			this.prefix = prefix;
+			this.depth = depth;
+		}
+		
+		protected SolutionInfo compute() {
+			if(noFreshLeft(prefix, depth) || upBound(prefix, depth) < sharedScore.get()) {
+				return null;
+			}
+			if(depth < splitDepth) {
+				// the branch taking the story is searched here first, like the 
+				// greedy order of findBest, and the other one can be stolen
+				int s = stories[depth];
+				SearchTask without = new SearchTask(prefix, depth + 1);
+				without.fork();
+				SolutionInfo a = null;
+				if(prefix.height + store.getHeight(s) <= H) {
+					SolutionInfo p = new SolutionInfo(numStory);
+					p.mask.copyFrom(prefix.mask, numStory);
+					p.mask.set(depth);
+					p.height = prefix.height + store.getHeight(s);
+					p.score = prefix.score + store.getScore(s);
+					p.size = prefix.size + 1;
+					p.fresh = prefix.fresh + (freshAt.get(depth) ? 1 : 0);
+					a = new SearchTask(p, depth + 1).compute();
+				}
+				SolutionInfo b = without.join();
+				if(a == null) return b;
+				if(b == null) return a;
+				return isBetter(b, a) ? b : a;
+			}
+			
+			Search local = new Search(numStory);
+			SolutionInfo found = new SolutionInfo(numStory);
+			found.score = -1;
+			local.reset(depth, found, true);
+			local.cur.mask.copyFrom(prefix.mask, numStory);
+			local.cur.height = prefix.height;
+			local.cur.score = prefix.score;
+			local.cur.size = prefix.size;
+			local.cur.fresh = prefix.fresh;
+			local.findBest();
+			addCounts(local);
+			synchronized(BranchBoundSolver.this) {
+				taskCount++;
+			}
+			return found.score >= 0 ? found : null;
+		}
+	}
+	
+	private class Search {
+		/* state of one depth first search over stories[floor..numStory-1] */
+		SolutionInfo cur;
+		SolutionInfo best;
+		int floor;
+		boolean shared;		// prune with sharedScore too, for fork/join tasks
+		long nodes;
+		long cuts;
+		long leaves;
+		
+		Search(int N) {
+			cur = new SolutionInfo(N);
+		}
+		
+		void reset(int floor, SolutionInfo best, boolean shared) {
+			this.floor = floor;
+			this.best = best;
+			this.shared = shared;
+			cur.mask.ensureCapacity(numStory);
+			cur.mask.clear(0, numStory);
+			cur.height = 0;
+			cur.size = 0;
+			cur.score = 0;
+			cur.fresh = 0;
+			nodes = 0;
+			cuts = 0;
+			leaves = 0;
+		}
+		
+		void findBest() {
+			/* based on horowitz_sahni algorithm. basically use binary bit mask to 
+			 * denote if a story is pick and do backtracing on the story window. 
+			 * Estimate the possible score up bound and do branch cut if the up bound
+			 * is smaller than best score. the stories is re-ordered based on its 
+			 * ratio for up bound estimate.
+			 * the result is left in best.
+			 */
+			int start = floor;
+			int pos = 0;
+			int end = 0;
+			int oldHeight = 0;
+			int oldScore = 0;
+			int oldSize = 0;
+			int oldFresh = 0;
+			
+			if(numStory == 0) return;
+			while(true) {
+				oldHeight = cur.height;
+				oldSize = cur.size;
+				oldScore = cur.score;
+				oldFresh = cur.fresh;
+				if((end = findUpBound(start)) < 0) {
+					// the up bound is smaller than the best, so backtrace
+					// first restore the state before explore
+					cur.height = oldHeight;
+					cur.size = oldSize;
+					cur.score = oldScore;
+					cur.fresh = oldFresh;
+					cur.mask.clear(start, -end-1);
+					pos = backtracingOrExit(start-1);
+				} else if(end < numStory) {
+					// the up bound is greater than the best, and story end does not 
+					// fit, so continue to explore without it
+					start = end + 1;
+					continue;
+				} else {
+					// we have reached the end of the stories and the upbound is still greater 
+					// than the best, then this might be the best
+					// need to compare with the best
+					if(cur.score > best.score || (cur.score == best.score && 
+						cur.size < best.size)) {
+						best.score = cur.score;
+						best.size = cur.size;
+						best.height = cur.height;
+						best.mask.copyFrom(cur.mask, numStory);
+						if(shared) {
+							sharedScore.accumulateAndGet(cur.score, Math::max);
+						}
+					} else if(cur.score == best.score && cur.size == best.size){
+						// the score and size are same, so need to see whose id is smaller
+						if(isSidSmaller(cur, best)) {
+							best.height = cur.height;
+							best.mask.copyFrom(cur.mask, numStory);
+						}
+					}
+					if(debug) {
+						System.out.println("Best Solution so far: score: " + best.score + 
+								" height: " + best.height);
+					}
+					
+					// whether we find one solution or not, need to continue to explore
+					pos = backtracingOrExit(numStory-1);
+				}
+				
+				if(pos < 0) {
+					return;
+				} else {
+					start = pos + 1;
+				}
+			}
+		}
+		
+		int findUpBound(int start) {
+			/* greedily add the stories from index start in stories until one does not fit,
+			 * then estimate the up bound of the score from the story that breaks.
+			 * return the index of the break point (numStory if all fit) if up bound is 
+			 * not smaller than best, else return -(break point)-1.
+			 */
+			int pos = start;
+			int s = 0;
+			long upBound = 0;
+			
+			nodes++;
+			if(noFreshLeft(cur, start)) {
+				cuts++;
+				return -start-1;
+			}
+			while(pos < numStory) {
+				s = stories[pos];
+				if(store.getHeight(s) > H - cur.height) {
+					if(debug) {
+						System.out.println("findUpBound: Not adding story: " + 
+								store.getSid(s) + " pos: " + pos);
+					}
+					break;
+				}
+				cur.height += store.getHeight(s);
+				cur.score += store.getScore(s);
+				cur.size++;
+				cur.mask.set(pos);
+				pos++;
+			}
+			cur.fresh += freshAfter[start] - freshAfter[pos];
+			
+			if(pos >= numStory) {
+				upBound = cur.score;
+				leaves++;
+			} else if(bound == DANTZIG) {
+				upBound = cur.score + (long) (H - cur.height) * store.getScore(s) / store.getHeight(s);
+			} else {
+				upBound = cur.score + martelloToth(start, pos, H - cur.height);
+			}
+			
+			int bestScore = shared ? Math.max(best.score, sharedScore.get()) : best.score;
+			if(upBound >= bestScore) {
+				return pos;
+			} else {
+				cuts++;
+				return -pos-1;
+			}
+		}
+		
+		int backtracingOrExit(int fromIdx) {
+			/* find the first bit backward that is set, from fromIdx inclusive 
+			 * and not below floor, unset it and return the index of that bit
+			 */
+			int pos = cur.mask.previousSetBit(fromIdx);
+			if(pos < floor) return -1;
+			// unset this position and then explore
+			int s = stories[pos];
+			cur.mask.clear(pos);
+			cur.height -= store.getHeight(s);
+			cur.score -= store.getScore(s);
+			cur.size -= 1;
+			if(freshAt.get(pos)) cur.fresh--;
+			if(debug) {
+				System.out.println("backtracing: unset story: " + store.getSid(s) + 
+						"height: " + cur.height + "score: " + cur.score);
+			}
+			
+			return pos;
+		}
+	}
+	
+	private long upBound(SolutionInfo prefix, int start) {
+		/* up bound of the stories from start on, on top of prefix */
+		int capacity = H - prefix.height;
+		long score = prefix.score;
+		int pos = start;
+		while(pos < numStory && store.getHeight(stories[pos]) <= capacity) {
+			capacity -= store.getHeight(stories[pos]);
+			score += store.getScore(stories[pos]);
+			pos++;
+		}
+		if(pos >= numStory) {
+			return score;
+		} else if(bound == DANTZIG) {
+			return score + (long) capacity * store.getScore(stories[pos]) / store.getHeight(stories[pos]);
+		}
+		return score + martelloToth(start, pos, capacity);
+	}
+	
+	private long martelloToth(int start, int crit, int capacity) {
+		/* Martello-Toth U2 bound for the stories from start on, when the stories
+		 * start..crit-1 are taken and story crit does not fit in capacity:
+		 * either crit is left out and the rest is filled at the ratio of crit+1,
+		 * or crit is put in and the missing height is taken back from crit-1 at 
+		 * its ratio. Both are never above the Dantzig bound. Exact in integers.
+		 */
+		int s = stories[crit];
+		long upBound = 0;
+		if(crit + 1 < numStory) {
+			int next = stories[crit+1];
+			upBound = (long) capacity * store.getScore(next) / store.getHeight(next);
+		}
+		if(crit > start) {
+			// crit can only be put in by giving back some of start..crit-1
+			int prev = stories[crit-1];
+			long over = store.getHeight(s) - capacity;
+			long with = Math.floorDiv((long) store.getScore(s) * store.getHeight(prev) - 
+					over * store.getScore(prev), store.getHeight(prev));
+			upBound = Math.max(upBound, with);
+		}
+		return upBound;
+	}
+}
+
+class SolutionInfo {
+	WordMask mask;
+	int size;
+	int score;
+	int height;
+	int fresh;		// stories added since the last search, for a warm start
+	
+	public SolutionInfo(int N) {
+		mask = new WordMask(N);
+		size = 0;
+		score = 0;
+		height = 0;
+	}
+}
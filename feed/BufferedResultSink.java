@@ -0,0 +1,143 @@
+package feed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class BufferedResultSink implements ResultSink {
+	/* Formats the ints of a result straight into one reusable byte buffer 
+	 * and hands it to the stream only when full or on flush, so a reload 
+	 * is no longer a print call per sid on a synchronized PrintStream. 
+	 * 
+	 * The line of the last result is kept as bytes; FeedSession hands out 
+	 * the same FeedResult again while the window is unchanged, and then the 
+	 * line is copied instead of formatted. 
+	 * 
+	 * Without sids only "score size" is written, and lazy sids of a result 
+	 * are never found. Score-only results are always written that way. 
+	 * With the bound, " ub " and the upper bound of the best score end the 
+	 * line, the score itself for exact engines. 
+	 */
+	private static final int MAX_INT_CHARS = 11;	// "-2147483648"
+	private static final int MAX_LONG_CHARS = 20;
+	private OutputStream out;
+	private byte[] buf;
+	private int pos;
+	private FeedResult cached;
+	private byte[] line = new byte[64];
+	private int lineLength;
+	private boolean withSids;
+	private boolean withBound;
+	
+	public BufferedResultSink(OutputStream out) {
+		this(out, 1 << 16);
+	}
+	
+	public BufferedResultSink(OutputStream out, int bufferSize) {
+		this(out, bufferSize, true);
+	}
+	
+	public BufferedResultSink(OutputStream out, int bufferSize, boolean withSids) {
+		this.out = out;
+		this.withSids = withSids;
+		buf = new byte[Math.max(bufferSize, 2 * MAX_INT_CHARS)];
+	}
+	
+	public void setWithBound(boolean withBound) {
+		this.withBound = withBound;
+		cached = null;
+	}
+	
+	public void write(FeedResult result) throws IOException {
+		if(result == cached) {
+			writeLine();
+			return;
+		}
+		// format the line in one piece when it fits, so it can be kept
+		int count = withSids && result.hasSids() ? result.getSize() : 0;
+		int maxLength = (count + 5) * (MAX_INT_CHARS + 1);
+		if(pos + maxLength > buf.length) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		int start = pos;
+		int[] sids = count > 0 ? result.getSids() : null;
+		writeInt(result.getScore());
+		writeByte(' ');
+		writeInt(result.getSize());
+		for(int i=0; i<count; i++) {
+			writeByte(' ');
+			writeInt(sids[i]);
+		}
+		if(withBound) {
+			writeByte(' ');
+			writeByte('u');
+			writeByte('b');
+			writeByte(' ');
+			writeLong(result.getUpperBound());
+		}
+		writeByte('\n');
+		if(maxLength <= buf.length) {
+			lineLength = pos - start;
+			if(line.length < lineLength) {
+				line = new byte[Math.max(lineLength, 2 * line.length)];
+			}
+			System.arraycopy(buf, start, line, 0, lineLength);
+			cached = result;
+		} else {
+			cached = null;
+		}
+	}
+	
+	private void writeLine() throws IOException {
+		if(pos + lineLength > buf.length) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		if(lineLength > buf.length) {
+			out.write(line, 0, lineLength);
+		} else {
+			System.arraycopy(line, 0, buf, pos, lineLength);
+			pos += lineLength;
+		}
+	}
+	
+	public void flush() throws IOException {
+		if(pos > 0) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		out.flush();
+	}
+	
+	private void writeByte(int b) throws IOException {
+		if(pos == buf.length) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		buf[pos++] = (byte) b;
+	}
+	
+	private void writeInt(int v) throws IOException {
+		writeLong(v);
+	}
+	
+	private void writeLong(long v) throws IOException {
+		if(pos + MAX_LONG_CHARS > buf.length) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		// digits from the back, in a long so that -MIN_VALUE does not overflow
+		long n = v;
+		if(n < 0) {
+			buf[pos++] = '-';
+			n = -n;
+		}
+		int len = 1;
+		for(long m = n; m >= 10; m /= 10) len++;
+		for(int i=pos+len-1; i>=pos; i--) {
+			buf[i] = (byte) ('0' + n % 10);
+			n /= 10;
+		}
+		pos += len;
+	}
+}
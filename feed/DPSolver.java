@@ -0,0 +1,423 @@
+package feed;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class DPSolver implements FeedSolver {
+	/* how the picked stories are recovered after the DP */
+	public static final int PICK_BITS = 0;
+	public static final int DIVIDE = 1;
+	public static final int PACKED = 2;
+	public static final int SCORE_ONLY = 3;	// not at all, no pick table
+	/* below this page height a story update is too short to be worth splitting */
+	public static final int PARALLEL_MIN_HEIGHT = 1 << 14;
+	private StoryStore store;
+	private FeedResult last;
+	private int mode;
+	private int val[];
+	private int pickStoryNum[];
+	private long pick[][];		// PICK_BITS: one bit per height, row is store position & rowMask
+	private int rowMask;
+	private int exitCap[];		// DIVIDE: with val and pickStoryNum the rows of the whole recursion
+	private int[] picked;
+	private int size;
+	private int hRemaining;
+	private long peakBytes;
+	private int generation;		// reloads so far, a lazy result is read in its own
+	private boolean warm;		// the pick rows still hold the suffix DP of the window
+	private int warmTail;
+	private long warmReloads;
+	private ForkJoinPool pool;
+	private int chunkSize;
+	private int nextVal[];		// parallel: the layer being written
+	private int nextNum[];
+	private int curPos;
+	private long curPick[];
+	private MaxPlusKernel kernel;	// PACKED: layer update on packed keys
+	private ScoreDPSolver byScore;	// takes the reloads its tables are much smaller for
+	private long key[];
+	private long nextKey[];
+	private int H;
+	
+	public DPSolver(StoryStore store, int H) {
+		this(store, H, PICK_BITS);
+	}
+	
+	public DPSolver(StoryStore store, int H, int mode) {
+		this(store, H, mode, null);
+	}
+	
+	public DPSolver(StoryStore store, int H, int mode, ForkJoinPool pool) {
+		/* with a pool of more than one thread and H of at least 
+		 * PARALLEL_MIN_HEIGHT, each story update of the pick table mode is 
+		 * split over the height range. The pool is shared, never shut down.
+		 * Except in DIVIDE mode, which is about the memory bound, a reload goes
+		 * to a ScoreDPSolver when the window scores are much smaller than H.
+		 */
+		this.store = store;
+		this.H = H;
+		this.mode = mode;
+		val = new int[H+1];
+		pickStoryNum = new int[H+1];
+		pick = new long[0][];
+		rowMask = -1;
+		if(mode == DIVIDE) {
+			exitCap = new int[H+1];
+			peakBytes = 12L * (H+1);
+		}
+		picked = new int[16];
+		if(pool != null && pool.getParallelism() > 1 && mode == PICK_BITS 
+				&& H >= PARALLEL_MIN_HEIGHT) {
+			this.pool = pool;
+			// whole pick words per chunk, so no two threads write the same long
+			chunkSize = Math.max(4096, (H / (pool.getParallelism() * 4)) & ~63);
+			nextVal = new int[H+1];
+			nextNum = new int[H+1];
+		}
+		if(mode == PACKED) {
+			kernel = loadKernel();
+			key = new long[H+1];
+			nextKey = new long[H+1];
+		}
+		if(mode != DIVIDE) {
+			byScore = new ScoreDPSolver(store, H, mode != SCORE_ONLY);
+		}
+	}
+	
+	static MaxPlusKernel loadKernel() {
+		/* the Vector API kernel if it was built and the jvm runs with 
+		 * --add-modules jdk.incubator.vector, else the scalar one.
+		 */
+		try {
+			MaxPlusKernel k = (MaxPlusKernel) Class.forName("feed.VectorKernel")
+					.getDeclaredConstructor().newInstance();
+			k.update(new long[1], new long[1], 0, 0, 0, new long[1]);
+			return k;
+		} catch(Throwable t) {
+			return new ScalarMaxPlusKernel();
+		}
+	}
+	
+	public String getKernel() {
+		return kernel != null ? kernel.getClass().getSimpleName() : null;
+	}
+	
+	public void addStory(int pos) {
+		warm = false;
+	}
+	
+	public boolean expireStory(int pos) {
+		/* this may walk the pick table for the sids of the last reload. That 
+		 * is still safe here: the rows are only rewritten by the next reload 
+		 * and the stories expiring before it keep their data in the store. 
+		 * A score-only result has no sids and never holds the story.
+		 * Only the oldest story leaving keeps the rows of the others valid, a 
+		 * filter taking out one in the middle does not.
+		 */
+		if(pos != store.head()) {
+			warm = false;
+		}
+		return last != null && last.contains(store.getSid(pos));
+	}
+	
+	public FeedResult reload() {
+		/* Same dynamic programing as Solution.calcScore. Say val[i][h] denotes 
+		 	the max score one can get from the i th story to the last story of 
+		 	the window under limit height of h:
+		 	val[i][h] = max{val[i+1][h], val[i+1][h-hi] + si}
+		 	The stories are fed from the newest to the oldest so that walking 
+		 	the pick table from the oldest story takes a story whenever it is 
+		 	part of some best solution, which gives the smallest sid list.
+		 	The walk is left until the sids are read, and never done in 
+		 	score-only mode, which keeps no pick table either.
+		 	Row j only depends on the stories from j to the newest one, so 
+		 	when stories only expired since the last table, its rows from the 
+		 	new head are the DP of this window and a walk, O(window), is the 
+		 	whole reload. A new story changes every row and needs the full 
+		 	O(window * H) pass, SlidingDPSolver is the one that adds in O(H).
+		 */
+		int head = store.head();
+		int numStory = store.size();
+		int score = 0;
+		
+		if(picked.length < numStory) {
+			picked = new int[Math.max(numStory, picked.length << 1)];
+		}
+		size = 0;
+		hRemaining = H;
+		generation++;
+		if(warm && store.tail() == warmTail) {
+			walkPick(head, numStory);
+			for(int i=0; i<size; i++) {
+				score += store.getScore(picked[i]);
+				picked[i] = store.getSid(picked[i]);
+			}
+			warmReloads++;
+			last = new FeedResult(score, size, Arrays.copyOf(picked, size));
+			return last;
+		}
+		warm = false;
+		if(byScore != null && byScore.cheaper()) {
+			// same answer from the table by score, the pick table is not touched
+			last = byScore.solve();
+			return last;
+		}
+		if(mode == SCORE_ONLY) {
+			Arrays.fill(val, 0);
+			Arrays.fill(pickStoryNum, 0);
+			for(int j=numStory-1; j>=0; j--) {
+				calcScore(head + j, val, pickStoryNum, null);
+			}
+			last = new FeedResult(val[H], pickStoryNum[H], (int[]) null);
+			return last;
+		} else if(mode == DIVIDE) {
+			if(numStory > 0) {
+				divide(head, head + numStory, H);
+			}
+			for(int i=0; i<size; i++) {
+				score += store.getScore(picked[i]);
+				picked[i] = store.getSid(picked[i]);
+			}
+		} else if(mode == PACKED) {
+			ensureRows(numStory);
+			Arrays.fill(key, 0);
+			for(int j=numStory-1; j>=0; j--) {
+				long row[] = pick[(head + j) & rowMask];
+				Arrays.fill(row, 0);
+				if(!store.isActive(head + j)) continue;
+				kernel.update(key, nextKey, H, store.getHeight(head + j), 
+						store.getScore(head + j) * MaxPlusKernel.KEY_SCALE - 1, row);
+				long tmp[] = key;
+				key = nextKey;
+				nextKey = tmp;
+			}
+			score = (int) ((key[H] + MaxPlusKernel.KEY_SCALE - 1) / MaxPlusKernel.KEY_SCALE);
+			int count = (int) (score * MaxPlusKernel.KEY_SCALE - key[H]);
+			setWarm();
+			last = lazyResult(score, count, head, numStory);
+			return last;
+		} else {
+			ensureRows(numStory);
+			Arrays.fill(val, 0);
+			Arrays.fill(pickStoryNum, 0);
+			for(int j=numStory-1; j>=0; j--) {
+				if(pool != null) {
+					calcScoreParallel(head + j, pick[(head + j) & rowMask]);
+				} else {
+					calcScore(head + j, val, pickStoryNum, pick[(head + j) & rowMask]);
+				}
+			}
+			setWarm();
+			last = lazyResult(val[H], pickStoryNum[H], head, numStory);
+			return last;
+		}
+		
+		last = new FeedResult(score, size, Arrays.copyOf(picked, size));
+		return last;
+	}
+	
+	private FeedResult lazyResult(int score, int count, int head, int numStory) {
+		int gen = generation;
+		return new FeedResult(score, count, () -> {
+			if(gen != generation) {
+				throw new IllegalStateException("sids of a reload read after the next reload");
+			}
+			size = 0;
+			hRemaining = H;
+			walkPick(head, numStory);
+			for(int i=0; i<size; i++) {
+				picked[i] = store.getSid(picked[i]);
+			}
+			return Arrays.copyOf(picked, size);
+		});
+	}
+	
+	private void setWarm() {
+		warm = true;
+		warmTail = store.tail();
+	}
+	
+	private void walkPick(int head, int numStory) {
+		/* get the stories picked. The row of an inactive story is all zero, 
+		 * so the active flags, which a filter may change before the walk, are 
+		 * not looked at. picked gets the store positions. */
+		for(int j=0; j<numStory && hRemaining > 0; j++) {
+			long row[] = pick[(head + j) & rowMask];
+			if((row[hRemaining >>> 6] & (1L << hRemaining)) != 0) {
+				picked[size++] = head + j;
+				hRemaining -= store.getHeight(head + j);
+			}
+		}
+	}
+	
+	private void divide(int lo, int hi, int cap) {
+		/* Hirschberg style recovery of the stories the pick table walk would 
+		 * take in [lo, hi) with cap height left, as if no story came after hi. 
+		 * The DP of [mid, hi) is run from an empty row, then continued down to 
+		 * lo while exitCap[h] follows the height the walk entering there with 
+		 * h has left when it gets to mid. With the walk's split of cap, both 
+		 * halves are the same problem on their own: the first half takes the 
+		 * smallest sid list of its best answer within cap - exitCap[cap], the 
+		 * second within exitCap[cap]. Rows only go up to cap and the caps of 
+		 * one level add up to at most H, so it is O(H) memory and about twice 
+		 * the time of the pick table.
+		 * picked gets the store positions here, the caller maps them to sids.
+		 */
+		if(cap == 0) return;
+		if(hi - lo == 1) {
+			// a story on its own is taken when it fits and scores
+			if(store.isActive(lo) && store.getScore(lo) > 0 && store.getHeight(lo) <= cap) {
+				picked[size++] = lo;
+			}
+			return;
+		}
+		
+		int mid = (lo + hi) >>> 1;
+		Arrays.fill(val, 0, cap+1, 0);
+		Arrays.fill(pickStoryNum, 0, cap+1, 0);
+		for(int pos=hi-1; pos>=mid; pos--) {
+			calcScore(pos, val, pickStoryNum, null, cap);
+		}
+		for(int h=0; h<=cap; h++) {
+			exitCap[h] = h;
+		}
+		for(int pos=mid-1; pos>=lo; pos--) {
+			if(!store.isActive(pos)) continue;
+			int curScore = store.getScore(pos);
+			int curHeight = store.getHeight(pos);
+			for(int h=cap; h>=curHeight; h--) {
+				int subHeight = h - curHeight;
+				int score = val[subHeight] + curScore;
+				int num = pickStoryNum[subHeight] + 1;
+				if(val[h] < score || (val[h] == score && pickStoryNum[h] >= num)) {
+					// the walk takes the story, then goes on from subHeight
+					val[h] = score;
+					pickStoryNum[h] = num;
+					exitCap[h] = exitCap[subHeight];
+				}
+			}
+		}
+		int rest = exitCap[cap];
+		divide(lo, mid, cap - rest);
+		divide(mid, hi, rest);
+	}
+	
+	private void ensureRows(int numStory) {
+		/* the pick table only holds the live window. Rows are circular so a 
+		 * story keeps its row while it is in the window, and the table only 
+		 * grows, by doubling, when the window gets bigger than it.
+		 */
+		if(numStory <= pick.length) return;
+		int rows = Integer.highestOneBit(Math.max(numStory, 16) - 1) << 1;
+		int words = (H >>> 6) + 1;
+		long oldRows[][] = pick;
+		pick = Arrays.copyOf(oldRows, rows);
+		for(int r=oldRows.length; r<rows; r++) {
+			pick[r] = new long[words];
+		}
+		rowMask = rows - 1;
+		peakBytes = Math.max(peakBytes, 8L * words * rows + 8L * (H+1));
+	}
+	
+	public String getStats() {
+		String reloadStats = " walk only: " + warmReloads + 
+				(byScore != null ? " by score: " + byScore.getReloads() : "");
+		if(mode == DIVIDE) {
+			return "dp-dc: peak table bytes: " + peakBytes;
+		} else if(mode == SCORE_ONLY) {
+			return "dp-score: peak table bytes: " + 8L * (H+1) + reloadStats;
+		} else if(mode == PACKED) {
+			return "dp-simd: kernel: " + getKernel() + " pick rows: " + pick.length + 
+					" peak table bytes: " + peakBytes + reloadStats;
+		}
+		return "dp: pick rows: " + pick.length + " peak table bytes: " + peakBytes + reloadStats;
+	}
+	
+	private void calcScoreParallel(int pos, long[] pick) {
+		/* val[h] of the new layer only reads the old layer, so with the two 
+		 * layers in separate buffers every height can be done independently.
+		 * The chunks write nextVal/nextNum, then the buffers are swapped.
+		 */
+		Arrays.fill(pick, 0);
+		if(!store.isActive(pos)) return;
+		curPos = pos;
+		curPick = pick;
+		pool.invoke(new LayerChunk(0, H+1));
+		int tmp[] = val;
+		val = nextVal;
+		nextVal = tmp;
+		tmp = pickStoryNum;
+		pickStoryNum = nextNum;
+		nextNum = tmp;
+	}
+	
+	private class LayerChunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int lo;
+		private int hi;
+		
+		LayerChunk(int lo, int hi) {
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		protected void compute() {
+			if(hi - lo > chunkSize) {
+				int mid = lo + (((hi - lo) >>> 1) & ~63);
+				invokeAll(new LayerChunk(lo, mid), new LayerChunk(mid, hi));
+				return;
+			}
+			int curScore = store.getScore(curPos);
+			int curHeight = store.getHeight(curPos);
+			int from = Math.min(Math.max(lo, curHeight), hi);
+			System.arraycopy(val, lo, nextVal, lo, from - lo);
+			System.arraycopy(pickStoryNum, lo, nextNum, lo, from - lo);
+			for(int h=from; h<hi; h++) {
+				int subHeight = h - curHeight;
+				int score = val[subHeight] + curScore;
+				int num = pickStoryNum[subHeight] + 1;
+				if(val[h] < score || (val[h] == score && pickStoryNum[h] >= num)) {
+					// picking current story, on a tie for fewer stories or a smaller sid
+					nextVal[h] = score;
+					nextNum[h] = num;
+					curPick[h >>> 6] |= 1L << h;
+				} else {
+					nextVal[h] = val[h];
+					nextNum[h] = pickStoryNum[h];
+				}
+			}
+		}
+	}
+	
+	private void calcScore(int pos, int[] val, int[] pickStoryNum, long[] pick) {
+		calcScore(pos, val, pickStoryNum, pick, H);
+	}
+	
+	private void calcScore(int pos, int[] val, int[] pickStoryNum, long[] pick, int cap) {
+		int curScore = store.getScore(pos);
+		int curHeight = store.getHeight(pos);
+		if(pick != null) {
+			Arrays.fill(pick, 0);
+		}
+		if(!store.isActive(pos)) return;
+		for(int h=cap; h>=curHeight; h--) {
+			int subHeight = h - curHeight;
+			if(val[h] < val[subHeight] + curScore){
+				// picking current story
+				val[h] = val[subHeight] + curScore;
+				pickStoryNum[h] = pickStoryNum[subHeight] + 1;
+			} else if (val[h] == val[subHeight] + curScore && 
+					pickStoryNum[h] >= pickStoryNum[subHeight] + 1){
+				// tie situation, picking current story since there are fewer 
+				// stories, or the same number of stories with a smaller sid
+				pickStoryNum[h] = pickStoryNum[subHeight] + 1;
+			} else {
+				continue;
+			}
+			if(pick != null) {
+				pick[h >>> 6] |= 1L << h;
+			}
+		}
+	}
+}
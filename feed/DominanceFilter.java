@@ -0,0 +1,386 @@
+package feed;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class DominanceFilter implements FeedSolver {
+	/* Keeps stories that can never be in the best feed away from the solver.
+	 * Story a dominates story b when a is not higher and scores more, or
+	 * scores the same and is older (smaller sid). If b is in a solution and
+	 * some live story dominating it is not, swapping them gives a better
+	 * answer. So once b plus live stories dominating it are higher than H,
+	 * b can not be in the best solution and is deactivated.
+	 *
+	 * The live stories are kept in height classes, exact below 2*CLASS_SIZE
+	 * and CLASS_SIZE classes per doubling above, each class a treap ordered
+	 * by score and then newest first, so the stories dominating b in a lower
+	 * class, or in b's own class when it is exact, are the ones after b. A
+	 * class that is not exact does not count dominance inside itself, which
+	 * only keeps a story more, never drops one that could be picked.
+	 *
+	 * A node holds over = height + cover - H, cover being the summed height
+	 * of the stories dominating it, and the treap keeps its max over the
+	 * active nodes and min over the inactive ones under lazy adds. A new
+	 * story sums the nodes after it in the lower classes and adds its height
+	 * to the nodes before it in the higher ones; its expiry takes the height
+	 * off again. Only the expiry of an older story lowers a cover, newer ones
+	 * outlive b. Either way it is one walk down each non empty class, and
+	 * there are at most CLASS_SIZE*(log2(H)+2) of them, so O(log H log n)
+	 * plus a walk for each story changing state. A class whose scores are
+	 * all on one side is summed or skipped at its root. Deactivated stories
+	 * stay in the store, which is the expiry queue.
+	 */
+	public static final int CLASS_BITS = 2;
+	public static final int CLASS_SIZE = 1 << CLASS_BITS;
+	private static final long NONE_ACTIVE = Long.MIN_VALUE;
+	private static final long NONE_INACTIVE = Long.MAX_VALUE;
+	private FeedSolver solver;
+	private StoryStore store;
+	private int[] roots;		// per height class, -1 when empty
+	private int[] classSize;
+	private BitSet used;		// the non empty classes
+	private int[] key;			// store position of a node
+	private int[] score;		// and its score and height
+	private int[] height;
+	private int[] left;
+	private int[] right;
+	private int[] prio;
+	private long[] over;
+	private long[] lazy;
+	private long[] heights;		// summed height of the subtree
+	private int[] minScore;		// score range of the subtree
+	private int[] maxScore;
+	private long[] maxActive;
+	private long[] minInactive;
+	private int freeList;
+	private int nodeCount;
+	private int seed;
+	private long dropped;
+	private long restored;
+	private int H;
+	
+	public DominanceFilter(StoryStore store, FeedSolver solver, int H) {
+		this.store = store;
+		this.solver = solver;
+		this.H = H;
+		roots = new int[32 * CLASS_SIZE];
+		Arrays.fill(roots, -1);
+		classSize = new int[roots.length];
+		used = new BitSet(roots.length);
+		int cap = Math.max(store.capacity(), 16);
+		key = new int[cap];
+		score = new int[cap];
+		height = new int[cap];
+		left = new int[cap];
+		right = new int[cap];
+		prio = new int[cap];
+		over = new long[cap];
+		lazy = new long[cap];
+		heights = new long[cap];
+		minScore = new int[cap];
+		maxScore = new int[cap];
+		maxActive = new long[cap];
+		minInactive = new long[cap];
+		freeList = -1;
+		seed = 0x2545F491;
+	}
+	
+	/* exact below 2*CLASS_SIZE, then the top CLASS_BITS+1 bits of the height */
+	static int heightClass(int height) {
+		if(height < 2 * CLASS_SIZE) {
+			return Math.max(height, 0);
+		}
+		int shift = 31 - Integer.numberOfLeadingZeros(height) - CLASS_BITS;
+		return (shift + 1) * CLASS_SIZE + (height >> shift) - CLASS_SIZE;
+	}
+	
+	public void addStory(int pos) {
+		int s = store.getScore(pos);
+		int h = store.getHeight(pos);
+		int k = heightClass(h);
+		boolean exact = k < 2 * CLASS_SIZE;
+		long cover = 0;
+		
+		// the live stories are all older, the ones scoring s or more dominate pos
+		for(int j=used.nextSetBit(0); j>=0 && (j<k || (j==k && exact)); j=used.nextSetBit(j+1)) {
+			cover += heightFrom(roots[j], s);
+		}
+		// pos dominates the ones scoring less in the higher classes
+		for(int j=used.nextSetBit(exact ? k : k+1); j>=0; j=used.nextSetBit(j+1)) {
+			if(minScore[roots[j]] < s) {
+				roots[j] = addBelow(roots[j], s, h);
+				roots[j] = deactivate(roots[j]);
+			}
+		}
+		
+		int node = newNode(pos, s, h, h + cover - H);
+		if(over[node] > 0) {
+			store.setActive(pos, false);
+			dropped++;
+		} else {
+			solver.addStory(pos);
+		}
+		pull(node);
+		roots[k] = insert(roots[k], node);
+		classSize[k]++;
+		used.set(k);
+	}
+	
+	public boolean expireStory(int pos) {
+		int s = store.getScore(pos);
+		int h = store.getHeight(pos);
+		int k = heightClass(h);
+		boolean exact = k < 2 * CLASS_SIZE;
+		boolean inBest = false;
+		
+		if(store.isActive(pos)) {
+			inBest = solver.expireStory(pos);
+		}
+		roots[k] = remove(roots[k], s, pos);
+		if(--classSize[k] == 0) {
+			used.clear(k);
+		}
+		// pos is the oldest, it dominated the ones scoring s or less in the higher classes
+		for(int j=used.nextSetBit(exact ? k : k+1); j>=0; j=used.nextSetBit(j+1)) {
+			if(minScore[roots[j]] <= s) {
+				roots[j] = addBelow(roots[j], s + 1L, -h);
+				roots[j] = restore(roots[j]);
+			}
+		}
+		return inBest;
+	}
+	
+	public FeedResult reload() {
+		return solver.reload();
+	}
+	
+	public String getStats() {
+		String inner = solver.getStats();
+		return "dominance: dropped: " + dropped + " restored: " + restored +
+				" height classes: " + used.cardinality() +
+				(inner != null ? "; " + inner : "");
+	}
+	
+	/* negative if node a comes before story (s, pos): lower score first, on
+	 * the same score the newer one first */
+	private int compare(int a, int s, int pos) {
+		int c = Integer.compare(score[a], s);
+		return c != 0 ? c : Integer.compare(pos, key[a]);
+	}
+	
+	/* summed height of the nodes scoring s or more */
+	private long heightFrom(int t, int s) {
+		long sum = 0;
+		while(t >= 0 && maxScore[t] >= s) {
+			if(minScore[t] >= s) {
+				return sum + heights[t];
+			}
+			if(score[t] >= s) {
+				sum += height[t] + (right[t] >= 0 ? heights[right[t]] : 0);
+				t = left[t];
+			} else {
+				t = right[t];
+			}
+		}
+		return sum;
+	}
+	
+	/* add delta to the nodes scoring less than s */
+	private int addBelow(int t, long s, long delta) {
+		if(t < 0 || minScore[t] >= s) return t;
+		if(maxScore[t] < s) {
+			apply(t, delta);
+			return t;
+		}
+		push(t);
+		if(score[t] < s) {
+			apply(left[t], delta);
+			over[t] += delta;
+			right[t] = addBelow(right[t], s, delta);
+		} else {
+			left[t] = addBelow(left[t], s, delta);
+		}
+		pull(t);
+		return t;
+	}
+	
+	private int deactivate(int t) {
+		if(t < 0 || maxActive[t] <= 0) return t;
+		push(t);
+		if(store.isActive(key[t]) && over[t] > 0) {
+			solver.expireStory(key[t]);
+			store.setActive(key[t], false);
+			dropped++;
+		}
+		left[t] = deactivate(left[t]);
+		right[t] = deactivate(right[t]);
+		pull(t);
+		return t;
+	}
+	
+	private int restore(int t) {
+		if(t < 0 || minInactive[t] > 0) return t;
+		push(t);
+		if(!store.isActive(key[t]) && over[t] <= 0) {
+			store.setActive(key[t], true);
+			solver.addStory(key[t]);
+			restored++;
+		}
+		left[t] = restore(left[t]);
+		right[t] = restore(right[t]);
+		pull(t);
+		return t;
+	}
+	
+	private void apply(int t, long delta) {
+		if(t < 0) return;
+		over[t] += delta;
+		lazy[t] += delta;
+		if(maxActive[t] != NONE_ACTIVE) maxActive[t] += delta;
+		if(minInactive[t] != NONE_INACTIVE) minInactive[t] += delta;
+	}
+	
+	private void push(int t) {
+		if(lazy[t] != 0) {
+			apply(left[t], lazy[t]);
+			apply(right[t], lazy[t]);
+			lazy[t] = 0;
+		}
+	}
+	
+	private void pull(int t) {
+		boolean active = store.isActive(key[t]);
+		long h = height[t];
+		long maxA = active ? over[t] : NONE_ACTIVE;
+		long minI = active ? NONE_INACTIVE : over[t];
+		int minS = score[t];
+		int maxS = score[t];
+		int l = left[t];
+		int r = right[t];
+		if(l >= 0) {
+			h += heights[l];
+			maxA = Math.max(maxA, maxActive[l]);
+			minI = Math.min(minI, minInactive[l]);
+			minS = minScore[l];
+		}
+		if(r >= 0) {
+			h += heights[r];
+			maxA = Math.max(maxA, maxActive[r]);
+			minI = Math.min(minI, minInactive[r]);
+			maxS = maxScore[r];
+		}
+		heights[t] = h;
+		maxActive[t] = maxA;
+		minInactive[t] = minI;
+		minScore[t] = minS;
+		maxScore[t] = maxS;
+	}
+	
+	private int insert(int t, int node) {
+		if(t < 0) return node;
+		push(t);
+		if(compare(t, score[node], key[node]) > 0) {
+			left[t] = insert(left[t], node);
+			if(prio[left[t]] > prio[t]) {
+				t = rotateRight(t);
+			}
+		} else {
+			right[t] = insert(right[t], node);
+			if(prio[right[t]] > prio[t]) {
+				t = rotateLeft(t);
+			}
+		}
+		pull(t);
+		return t;
+	}
+	
+	private int remove(int t, int s, int pos) {
+		if(t < 0) return t;
+		push(t);
+		int c = compare(t, s, pos);
+		if(c > 0) {
+			left[t] = remove(left[t], s, pos);
+		} else if(c < 0) {
+			right[t] = remove(right[t], s, pos);
+		} else {
+			int rest = merge(left[t], right[t]);
+			left[t] = freeList;
+			freeList = t;
+			return rest;
+		}
+		pull(t);
+		return t;
+	}
+	
+	private int merge(int a, int b) {
+		if(a < 0) return b;
+		if(b < 0) return a;
+		if(prio[a] > prio[b]) {
+			push(a);
+			right[a] = merge(right[a], b);
+			pull(a);
+			return a;
+		}
+		push(b);
+		left[b] = merge(a, left[b]);
+		pull(b);
+		return b;
+	}
+	
+	private int rotateRight(int t) {
+		int l = left[t];
+		push(l);
+		left[t] = right[l];
+		right[l] = t;
+		pull(t);
+		return l;
+	}
+	
+	private int rotateLeft(int t) {
+		int r = right[t];
+		push(r);
+		right[t] = left[r];
+		left[r] = t;
+		pull(t);
+		return r;
+	}
+	
+	private int newNode(int pos, int s, int h, long overH) {
+		int node;
+		if(freeList >= 0) {
+			node = freeList;
+			freeList = left[node];
+		} else {
+			if(nodeCount == key.length) {
+				int cap = nodeCount << 1;
+				key = Arrays.copyOf(key, cap);
+				score = Arrays.copyOf(score, cap);
+				height = Arrays.copyOf(height, cap);
+				left = Arrays.copyOf(left, cap);
+				right = Arrays.copyOf(right, cap);
+				prio = Arrays.copyOf(prio, cap);
+				over = Arrays.copyOf(over, cap);
+				lazy = Arrays.copyOf(lazy, cap);
+				heights = Arrays.copyOf(heights, cap);
+				minScore = Arrays.copyOf(minScore, cap);
+				maxScore = Arrays.copyOf(maxScore, cap);
+				maxActive = Arrays.copyOf(maxActive, cap);
+				minInactive = Arrays.copyOf(minInactive, cap);
+			}
+			node = nodeCount++;
+		}
+		// xorshift for the heap priority
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		key[node] = pos;
+		score[node] = s;
+		height[node] = h;
+		left[node] = -1;
+		right[node] = -1;
+		prio[node] = seed;
+		over[node] = overH;
+		lazy[node] = 0;
+		return node;
+	}
+}
@@ -0,0 +1,18 @@
+package feed;
+
+public class Event {
+	private String type;
+	private int time;
+	public Event(String t, int time) {
+		type = t;
+		this.time = time;
+	}
+	
+	public String getType() {
+		return type;
+	}
+	
+	public int getTime() {
+		return time;
+	}
+}
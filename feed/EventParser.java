@@ -0,0 +1,209 @@
+package feed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class EventParser implements EventSource {
+	/* Streaming parser for the "N W H" header and the "S t s h" / "R t"
+	 * lines, straight from the bytes of the input into int fields. No String,
+	 * no split and no Event per line, one buffer for the whole input.
+	 *
+	 * Same rules as readLine + split(" ") + parseInt: the header must be
+	 * exactly three numbers, at most N lines are read after it, every line
+	 * counts against N, lines with a short or unknown first token are
+	 * skipped, tokens past the ones needed are not looked at, and a bad
+	 * number throws NumberFormatException.
+	 *
+	 * The bytes come from a stream through one buffer, or from the mapped
+	 * chunks of a MappedLog, which are read in place.
+	 */
+	private static final int EOF = -1;
+	private InputStream in;
+	private byte[] buf;
+	private MappedLog log;
+	private int chunk;
+	private ByteBuffer data;
+	private int pos;
+	private int lim;
+	private int N;
+	private int W;
+	private int H;
+	private int count;
+	private byte type;
+	private int[] field = new int[3];
+	
+	public EventParser(InputStream in) {
+		this(in, 1 << 16);
+	}
+	
+	public EventParser(InputStream in, int bufferSize) {
+		this.in = in;
+		buf = new byte[bufferSize];
+		data = ByteBuffer.wrap(buf);
+	}
+	
+	public EventParser(MappedLog log) {
+		this.log = log;
+	}
+	
+	public void readHeader() throws Exception {
+		int c = peek();
+		int n = 0;
+		if(c == EOF) {
+			throw new Exception("input format wrong.");
+		}
+		while(n < 3) {
+			if(!parseNumber(n)) break;
+			n++;
+			if(peek() != ' ') break;
+			pos++;
+		}
+		while(peek() == ' ') pos++;
+		if(n != 3 || !atEndOfLine()) {
+			throw new Exception("input format wrong.");
+		}
+		skipLine();
+		N = field[0];
+		W = field[1];
+		H = field[2];
+	}
+	
+	public int getN() {
+		return N;
+	}
+	
+	public int getW() {
+		return W;
+	}
+	
+	public int getH() {
+		return H;
+	}
+	
+	/* false at the end of the input or after N lines */
+	public boolean next() throws IOException {
+		while(count < N && peek() != EOF) {
+			count++;
+			int need = 0;
+			int c = peek();
+			if(isEndOfLine(c)) {
+				skipLine();
+				continue;
+			}
+			pos++;
+			int d = peek();
+			if(d == ' ' || isEndOfLine(d)) {
+				if(c == 'S') need = 3;
+				else if(c == 'R') need = 1;
+			}
+			if(need > 0) {
+				int n = 0;
+				while(n < need && peek() == ' ') {
+					pos++;
+					if(!parseNumber(n)) break;
+					n++;
+				}
+				if(n == need) {
+					type = (byte) c;
+					skipLine();
+					return true;
+				}
+			}
+			skipLine();
+		}
+		return false;
+	}
+	
+	public byte getType() {
+		return type;
+	}
+	
+	public int getTime() {
+		return field[0];
+	}
+	
+	public int getScore() {
+		return field[1];
+	}
+	
+	public int getHeight() {
+		return field[2];
+	}
+	
+	private boolean parseNumber(int n) throws IOException {
+		/* parse one token into field[n]. An empty token is a missing field
+		 * when only spaces follow it on the line, as split drops those */
+		int c = peek();
+		if(c == ' ' || isEndOfLine(c)) {
+			while(peek() == ' ') pos++;
+			if(atEndOfLine()) return false;
+			throw new NumberFormatException("empty field");
+		}
+		boolean negative = false;
+		if(c == '-' || c == '+') {
+			negative = c == '-';
+			pos++;
+			c = peek();
+		}
+		long value = 0;
+		int digits = 0;
+		while(c >= '0' && c <= '9') {
+			value = value * 10 + (c - '0');
+			if(value > (long) Integer.MAX_VALUE + 1) {
+				throw new NumberFormatException("number too large");
+			}
+			digits++;
+			pos++;
+			c = peek();
+		}
+		if(digits == 0 || !(c == ' ' || isEndOfLine(c))) {
+			throw new NumberFormatException("not a number");
+		}
+		if(negative) value = -value;
+		if(value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("number too large");
+		}
+		field[n] = (int) value;
+		return true;
+	}
+	
+	private boolean atEndOfLine() throws IOException {
+		return isEndOfLine(peek());
+	}
+	
+	private static boolean isEndOfLine(int c) {
+		return c == '\n' || c == '\r' || c == EOF;
+	}
+	
+	private void skipLine() throws IOException {
+		int c;
+		while(!isEndOfLine(c = peek())) pos++;
+		if(c == EOF) return;
+		pos++;
+		// \r\n is one line end, as for readLine
+		if(c == '\r' && peek() == '\n') pos++;
+	}
+	
+	private int peek() throws IOException {
+		if(pos == lim && !fill()) {
+			return EOF;
+		}
+		return data.get(pos) & 0xff;
+	}
+	
+	private boolean fill() throws IOException {
+		pos = 0;
+		lim = 0;
+		if(log == null) {
+			lim = Math.max(in.read(buf, 0, buf.length), 0);
+			return lim > 0;
+		}
+		while(chunk < log.chunks()) {
+			data = log.chunk(chunk++);
+			lim = data.limit();
+			if(lim > 0) return true;
+		}
+		return false;
+	}
+}
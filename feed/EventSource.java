@@ -0,0 +1,30 @@
+package feed;
+
+import java.io.IOException;
+
+public interface EventSource {
+	/* A stream of stories and reloads read one at a time into int fields, 
+	 * from the text input (EventParser) or a binary log (BinaryEventReader). 
+	 * readHeader comes first, then next until it returns false. 
+	 */
+	void readHeader() throws Exception;
+	
+	int getN();
+	
+	int getW();
+	
+	int getH();
+	
+	/* move to the next story or reload, false at the end of the events */
+	boolean next() throws IOException;
+	
+	/* StoryStore.STORY or StoryStore.RELOAD */
+	byte getType();
+	
+	int getTime();
+	
+	/* score and height of a story */
+	int getScore();
+	
+	int getHeight();
+}
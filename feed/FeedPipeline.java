@@ -0,0 +1,224 @@
+package feed;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+public class FeedPipeline {
+	static boolean debug = false;
+	private FeedSession session;
+	private ResultSink sink;
+	private boolean streaming;
+	private int numStory;
+	
+	public FeedPipeline(String engine, int W, int H) throws Exception {
+		this(engine, W, H, false);
+	}
+	
+	public FeedPipeline(String engine, int W, int H, boolean dominance) throws Exception {
+		this(engine, W, H, dominance, ForkJoinPool.commonPool());
+	}
+	
+	public FeedPipeline(String engine, int W, int H, boolean dominance, ForkJoinPool pool) 
+			throws Exception {
+		session = new FeedSession(engine, W, H, dominance, pool);
+		sink = new BufferedResultSink(System.out);
+	}
+	
+	public void setSink(ResultSink sink) {
+		this.sink = sink;
+	}
+	
+	/* flush the answer of every reload at once, for a live event stream */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+	
+	public FeedSolver getSolver() {
+		return session.getSolver();
+	}
+	
+	public void solution(ArrayList<Event> events) throws IOException {
+		// the window and the solver are kept by the session, this only feeds and prints
+		int totalEvents = events.size();
+		Event event = null;
+		StoryEvent story = null;
+		
+		for(int i=0; i<totalEvents; i++) {
+			event = events.get(i);
+			if(event.getType().equals("S")) {
+				story = (StoryEvent) event;
+				session.addStory(story.getTime(), story.getScore(), story.getHeight(), story.getSid());
+			} else {
+				print(session.reload(event.getTime()));
+			}
+		}
+		sink.flush();
+	}
+	
+	public void solution(EventSource source) throws IOException {
+		// same loop straight off an event source, nothing is kept per event
+		while(source.next()) {
+			if(source.getType() == StoryStore.STORY) {
+				onStory(source.getTime(), source.getScore(), source.getHeight());
+			} else {
+				onReload(source.getTime());
+			}
+		}
+		sink.flush();
+	}
+	
+	/* incremental API: the next story of the input, numbered in arrival order 
+	 * like the stories of the text input; returns its sid */
+	public int onStory(int time, int score, int height) {
+		session.addStory(time, score, height, ++numStory);
+		return numStory;
+	}
+	
+	/* incremental API: answer a reload and hand it to the sink */
+	public FeedResult onReload(int time) throws IOException {
+		FeedResult result = session.reload(time);
+		print(result);
+		return result;
+	}
+	
+	private void print(FeedResult result) throws IOException {
+		sink.write(result);
+		if(debug || streaming) {
+			// keep the lines in order with the debug prints, or out at once
+			sink.flush();
+		}
+	}
+	
+	/* pool runs the parallel engines, they share it and never shut it down; 
+	 * "approx:0.05" is approx with its own epsilon. dp-window is no drop in 
+	 * for the exact engines, ties can give other sids, so it has to be asked 
+	 * for as "dp-window:relaxed" */
+	static FeedSolver createSolver(String engine, StoryStore store, int H, ForkJoinPool pool) 
+			throws Exception {
+		if(engine.equals("dp")) {
+			return new DPSolver(store, H);
+		} else if(engine.equals("bb")) {
+			return new BranchBoundSolver(store, H);
+		} else if(engine.equals("bb-dantzig")) {
+			return new BranchBoundSolver(store, H, BranchBoundSolver.DANTZIG);
+		} else if(engine.equals("bb-parallel")) {
+			return new BranchBoundSolver(store, H, BranchBoundSolver.MARTELLO_TOTH, pool);
+		} else if(engine.equals("dp-parallel")) {
+			return new DPSolver(store, H, DPSolver.PICK_BITS, pool);
+		} else if(engine.equals("dp-simd")) {
+			return new DPSolver(store, H, DPSolver.PACKED);
+		} else if(engine.equals("dp-score")) {
+			return new DPSolver(store, H, DPSolver.SCORE_ONLY);
+		} else if(engine.equals("dp-byscore")) {
+			return new ScoreDPSolver(store, H);
+		} else if(engine.equals("dp-dc")) {
+			return new DPSolver(store, H, DPSolver.DIVIDE);
+		} else if(engine.equals("approx")) {
+			return new ApproxSolver(store, H);
+		} else if(engine.startsWith("approx:")) {
+			return new ApproxSolver(store, H, parseEpsilon(engine.substring(7)));
+		} else if(engine.equals("greedy")) {
+			return new ApproxSolver(store, H, 0);
+		} else if(engine.equals("dp-window:relaxed")) {
+			return new SlidingDPSolver(store, H);
+		} else if(engine.equals("dp-window")) {
+			throw new Exception("dp-window may give other sids on ties, use dp-window:relaxed");
+		}
+		throw new Exception("unknown engine: " + engine);
+	}
+	
+	private static double parseEpsilon(String s) throws Exception {
+		double epsilon;
+		try {
+			epsilon = Double.parseDouble(s);
+		} catch(NumberFormatException e) {
+			throw new Exception("epsilon is no number: " + s);
+		}
+		if(!(epsilon >= 0 && epsilon < 1)) {
+			throw new Exception("epsilon must be in [0, 1): " + s);
+		}
+		return epsilon;
+	}
+	
+	public static void main(String args[]) throws Exception {
+		String engine = "bb";
+		int threads = 0;
+		String epsilon = null;
+		boolean stats = false;
+		boolean dominance = false;
+		String mapped = null;
+		boolean binary = false;
+		boolean streaming = false;
+		boolean scoreOnly = false;
+		boolean bound = false;
+		for(int i=0; i<args.length; i++) {
+			String arg = args[i];
+			if(arg.equals("-threads") && i+1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if(arg.equals("-stats")) {
+				stats = true;
+			} else if(arg.equals("-mmap") && i+1 < args.length) {
+				mapped = args[++i];
+			} else if(arg.equals("-eps") && i+1 < args.length) {
+				epsilon = args[++i];
+			} else if(arg.equals("-bound")) {
+				bound = true;
+			} else if(arg.equals("-score-only")) {
+				scoreOnly = true;
+			} else if(arg.equals("-stream")) {
+				streaming = true;
+			} else if(arg.equals("-binary")) {
+				binary = true;
+			} else if(arg.equals("-dominance")) {
+				dominance = true;
+			} else {
+				engine = arg;
+			}
+		}
+		
+		if(epsilon != null && engine.equals("approx")) {
+			engine = "approx:" + epsilon;
+		}
+		
+		// a null log is never closed
+		try(MappedLog log = mapped != null && !binary ? new MappedLog(Paths.get(mapped)) : null) {
+			EventSource parser;
+			if(binary) {
+				parser = new BinaryEventReader(System.in);
+			} else if(log != null) {
+				parser = new EventParser(log);
+			} else {
+				parser = new EventParser(System.in);
+			}
+			parser.readHeader();
+			int N = parser.getN();
+			int W = parser.getW();
+			int H = parser.getH();
+			
+			if(N == 0 || W == 0 || H == 0) return;
+			
+			// solve the issue; one pool for the parallel engines, the common one by default
+			ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+			FeedPipeline fp = new FeedPipeline(engine, W, H, dominance, pool);
+			fp.setStreaming(streaming);
+			if(scoreOnly || bound) {
+				// "score size" without the sids, which are never looked for, and/or the bound
+				BufferedResultSink sink = new BufferedResultSink(System.out, 1 << 16, !scoreOnly);
+				sink.setWithBound(bound);
+				fp.setSink(sink);
+			}
+			fp.solution(parser);
+			if(stats && fp.getSolver().getStats() != null) {
+				System.err.println(fp.getSolver().getStats());
+			}
+			if(stats) {
+				System.err.println(fp.session.getStats());
+			}
+			if(stats && log != null) {
+				System.err.println("mmap: chunks: " + log.chunks());
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package feed;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+public class FeedResult {
+	/* answer of one reload: the best score, the number of stories picked 
+	 * and their sids in ascending order.
+	 * 
+	 * The sids may be left to a solver to find on the first read, for callers 
+	 * that mostly want the score. Such a result must be read before the next 
+	 * reload of its solver, which throws IllegalStateException otherwise, and 
+	 * on the thread that runs the solver: FeedSessionManager finds them before 
+	 * it hands a result over. Once found, a result is safe to share between 
+	 * threads. A score-only result has no sids at all.
+	 * 
+	 * An approximate answer also carries an upper bound of the best score, 
+	 * so score / upperBound is a proven lower bound of its ratio. 
+	 */
+	final int score;
+	final int size;
+	private int[] sids;
+	private Supplier<int[]> pending;
+	private final long upperBound;
+	
+	public FeedResult(int score, int size, int[] sids) {
+		this(score, size, sids, -1);
+	}
+	
+	public FeedResult(int score, int size, int[] sids, long upperBound) {
+		this.score = score;
+		this.size = size;
+		this.sids = sids;
+		this.upperBound = upperBound;
+	}
+	
+	public FeedResult(int score, int size, Supplier<int[]> pending) {
+		this.score = score;
+		this.size = size;
+		this.pending = pending;
+		this.upperBound = -1;
+	}
+	
+	public int getScore() {
+		return score;
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	public boolean isExact() {
+		return upperBound < 0;
+	}
+	
+	/* the score itself for an exact answer */
+	public long getUpperBound() {
+		return upperBound < 0 ? score : upperBound;
+	}
+	
+	/* the sids, found now if they were left for later; null for score-only */
+	public synchronized int[] getSids() {
+		if(pending != null) {
+			sids = pending.get();
+			pending = null;
+		}
+		return sids;
+	}
+	
+	public synchronized boolean hasSids() {
+		return sids != null || pending != null;
+	}
+	
+	/* the same answer without its sids, for callers that only want the score */
+	public FeedResult withoutSids() {
+		return new FeedResult(score, size, null, upperBound);
+	}
+	
+	/* false when there are no sids */
+	public boolean contains(int sid) {
+		int[] s = getSids();
+		return s != null && Arrays.binarySearch(s, 0, size, sid) >= 0;
+	}
+}
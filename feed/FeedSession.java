@@ -0,0 +1,123 @@
+package feed;
+
+import java.util.concurrent.ForkJoinPool;
+
+public class FeedSession {
+	/* One feed: its own W and H, the live window in a StoryStore, the solver
+	 * working on it and the answer of the last reload. This is the event loop
+	 * of FeedPipeline without the parsing and printing, so it can be kept per
+	 * user in a FeedSessionManager. A session is not thread safe, its events
+	 * must come one at a time and in time order.
+	 *
+	 * Reloads are far more frequent than new stories, so the answer of the
+	 * last reload is kept with the window it was found for. Store positions
+	 * only grow and stories only join at the tail and leave at the head, so
+	 * the (head, tail) pair of the store names the window exactly; while it
+	 * is the same, a reload returns the last answer without asking the
+	 * solver. Activity changes of a DominanceFilter only happen on add and
+	 * expire, so they move the pair too.
+	 */
+	private FeedSolver solver;
+	private StoryStore store;
+	private FeedResult last;
+	private int lastHead = -1;
+	private int lastTail = -1;
+	private long reloads;
+	private long cacheHits;
+	private int W;
+	private int H;
+	
+	public FeedSession(String engine, int W, int H) throws Exception {
+		this(engine, W, H, false);
+	}
+	
+	public FeedSession(String engine, int W, int H, boolean dominance) throws Exception {
+		this(engine, W, H, dominance, ForkJoinPool.commonPool());
+	}
+	
+	/* pool runs a parallel engine and is shared with other sessions */
+	public FeedSession(String engine, int W, int H, boolean dominance, ForkJoinPool pool) 
+			throws Exception {
+		this.W = W;
+		this.H = H;
+		store = new StoryStore(16);
+		solver = FeedPipeline.createSolver(engine, store, H, pool);
+		if(dominance) {
+			if(engine.startsWith("dp-window")) {
+				throw new Exception("dp-window needs the stories in arrival order, no dominance filter.");
+			}
+			solver = new DominanceFilter(store, solver, H);
+		}
+		last = new FeedResult(0, 0, new int[0]);
+	}
+	
+	public FeedSolver getSolver() {
+		return solver;
+	}
+	
+	public int getW() {
+		return W;
+	}
+	
+	public int getH() {
+		return H;
+	}
+	
+	/* number of stories in the window, expired ones go on the next reload */
+	public int getWindowSize() {
+		return store.size();
+	}
+	
+	/* answer of the last reload, empty before the first one */
+	public FeedResult getLast() {
+		return last;
+	}
+	
+	/* return false if the story is higher than the page and was dropped */
+	public boolean addStory(int time, int score, int height, int sid) {
+		// a story higher than the page can never be picked
+		if(height > H) return false;
+		int pos = store.add(StoryStore.STORY, time, score, height, sid);
+		solver.addStory(pos);
+		return true;
+	}
+	
+	public FeedResult reload(int time) {
+		/* stories come in time order, so the window is a queue: new stories
+		 * are pushed at the tail of the store and on every reload the stories
+		 * older than W are popped from the head. The solver only does the
+		 * optimization on what is left.
+		 */
+		boolean bestExpired = false;
+		int pos;
+		
+		while(store.size() > 0 && store.getTime(store.head()) < time - W) {
+			pos = store.head();
+			if(solver.expireStory(pos)) {
+				bestExpired = true;
+			}
+			store.poll();
+			if(FeedPipeline.debug) {
+				System.out.println("Removing story: " + store.getSid(pos));
+			}
+		}
+		if(FeedPipeline.debug && bestExpired) {
+			System.out.println("Best solution lost a story at: " + time);
+		}
+		
+		reloads++;
+		if(store.head() == lastHead && store.tail() == lastTail) {
+			cacheHits++;
+			return last;
+		}
+		last = solver.reload();
+		lastHead = store.head();
+		lastTail = store.tail();
+		return last;
+	}
+	
+	/* one line of reload cache statistics */
+	public String getStats() {
+		return "reload cache: hits: " + cacheHits + " of " + reloads;
+	}
+}
@@ -0,0 +1,193 @@
+package feed;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FeedSessionManager {
+	/* Many feeds in one JVM, one FeedSession per user. The sessions are kept
+	 * in a power of two number of hash maps, each behind its own lock and
+	 * picked by the hash of the user id, so users on different stripes never
+	 * contend on open, lookup or close.
+	 *
+	 * Every session has a mailbox. Events of one user are queued and run one
+	 * at a time in order, events of different users run in parallel on one
+	 * shared pool. An idle user costs an empty queue and no thread, and a
+	 * busy one gives the worker back after BATCH events so the others are
+	 * not starved. The parallel engines of all sessions share solverPool, 
+	 * so the threads stay bounded however many sessions are open.
+	 */
+	private static final int BATCH = 64;
+	private HashMap<String, Mailbox>[] stripes;
+	private Object[] locks;
+	private ForkJoinPool pool;
+	private ForkJoinPool solverPool;
+	
+	public FeedSessionManager() {
+		this(64, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public FeedSessionManager(int numStripes, int parallelism) {
+		this(numStripes, parallelism, ForkJoinPool.commonPool());
+	}
+	
+	@SuppressWarnings("unchecked")
+	public FeedSessionManager(int numStripes, int parallelism, ForkJoinPool solverPool) {
+		this.solverPool = solverPool;
+		int n = 1;
+		while(n < numStripes) n <<= 1;
+		stripes = (HashMap<String, Mailbox>[]) new HashMap<?, ?>[n];
+		locks = new Object[n];
+		for(int i=0; i<n; i++) {
+			stripes[i] = new HashMap<String, Mailbox>();
+			locks[i] = new Object();
+		}
+		// async mode: the mailboxes are event style tasks that are never joined
+		pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+				null, true);
+	}
+	
+	private int stripe(String user) {
+		int h = user.hashCode();
+		return (h ^ (h >>> 16)) & (stripes.length-1);
+	}
+	
+	public FeedSession open(String user, String engine, int W, int H) throws Exception {
+		return open(user, engine, W, H, false);
+	}
+	
+	/* the session of the user, created with the given engine, W, H and 
+	 * dominance filter if there is none yet; an existing session keeps its 
+	 * own settings. Engine options go with the engine, as in "approx:0.05" */
+	public FeedSession open(String user, String engine, int W, int H, boolean dominance) 
+			throws Exception {
+		int s = stripe(user);
+		synchronized(locks[s]) {
+			Mailbox box = stripes[s].get(user);
+			if(box == null) {
+				box = new Mailbox(new FeedSession(engine, W, H, dominance, solverPool));
+				stripes[s].put(user, box);
+			}
+			return box.session;
+		}
+	}
+	
+	public FeedSession get(String user) {
+		Mailbox box = mailbox(user);
+		return box == null ? null : box.session;
+	}
+	
+	/* events already queued for the user still run */
+	public boolean close(String user) {
+		int s = stripe(user);
+		synchronized(locks[s]) {
+			return stripes[s].remove(user) != null;
+		}
+	}
+	
+	public int size() {
+		int n = 0;
+		for(int s=0; s<stripes.length; s++) {
+			synchronized(locks[s]) {
+				n += stripes[s].size();
+			}
+		}
+		return n;
+	}
+	
+	/* completes with false if the story is higher than the page of the user */
+	public CompletableFuture<Boolean> addStory(String user, int time, int score, int height,
+			int sid) throws Exception {
+		Mailbox box = require(user);
+		CompletableFuture<Boolean> done = new CompletableFuture<Boolean>();
+		box.post(() -> done.complete(box.session.addStory(time, score, height, sid)), done);
+		return done;
+	}
+	
+	public CompletableFuture<FeedResult> reload(String user, int time) throws Exception {
+		return reload(user, time, true);
+	}
+	
+	/* the sids a solver leaves for later are found on the worker before the 
+	 * future completes, as the next reload of the user may run any time after; 
+	 * without sids the future gets a score-only copy and they are never found */
+	public CompletableFuture<FeedResult> reload(String user, int time, boolean withSids) 
+			throws Exception {
+		Mailbox box = require(user);
+		CompletableFuture<FeedResult> done = new CompletableFuture<FeedResult>();
+		box.post(() -> {
+			FeedResult result = box.session.reload(time);
+			if(withSids) {
+				result.getSids();
+			} else {
+				result = result.withoutSids();
+			}
+			done.complete(result);
+		}, done);
+		return done;
+	}
+	
+	/* stop taking events and wait for the queued ones */
+	public void shutdown() throws InterruptedException {
+		pool.shutdown();
+		while(!pool.awaitTermination(1, TimeUnit.SECONDS));
+	}
+	
+	private Mailbox mailbox(String user) {
+		int s = stripe(user);
+		synchronized(locks[s]) {
+			return stripes[s].get(user);
+		}
+	}
+	
+	private Mailbox require(String user) throws Exception {
+		Mailbox box = mailbox(user);
+		if(box == null) {
+			throw new Exception("no session for user: " + user);
+		}
+		return box;
+	}
+	
+	private class Mailbox implements Runnable {
+		final FeedSession session;
+		final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+		final AtomicBoolean scheduled = new AtomicBoolean();
+		
+		Mailbox(FeedSession session) {
+			this.session = session;
+		}
+		
+		void post(Runnable event, CompletableFuture<?> done) {
+			// an Error too only fails its own future, the mailbox goes on
+			queue.add(() -> {
+				try {
+					event.run();
+				} catch(Throwable t) {
+					done.completeExceptionally(t);
+				}
+			});
+			if(scheduled.compareAndSet(false, true)) {
+				pool.execute(this);
+			}
+		}
+		
+		public void run() {
+			Runnable event;
+			try {
+				for(int n=0; n<BATCH && (event = queue.poll()) != null; n++) {
+					event.run();
+				}
+			} finally {
+				/* an event posted after the last poll saw scheduled still true and
+				 * did not schedule, so look again after clearing it */
+				scheduled.set(false);
+				if(!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+					pool.execute(this);
+				}
+			}
+		}
+	}
+}
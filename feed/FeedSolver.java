@@ -0,0 +1,25 @@
+package feed;
+
+public interface FeedSolver {
+	/* A solver only sees the live window. FeedPipeline owns the event loop and 
+	 * the window kept in a StoryStore, and tells the solver the positions of 
+	 * the stories that enter and leave it. Stories are added in arrival order 
+	 * and expire in the same order, except behind a DominanceFilter, which may 
+	 * hand a story over late when the stories dominating it expire. A story 
+	 * that is not active in the store must not be picked.
+	 * 
+	 * Every solver must return the same answer for the same window: the highest 
+	 * score, on a score tie the fewer stories, and on a tie of both the smaller 
+	 * sid list compared in ascending order. SlidingDPSolver (dp-window:relaxed) and 
+	 * ApproxSolver are the exceptions, each says how far it keeps to this.
+	 */
+	void addStory(int pos);
+	
+	/* return true if the story was part of the answer of the last reload */
+	boolean expireStory(int pos);
+	
+	FeedResult reload();
+	
+	/* one line of engine statistics for tuning, or null */
+	String getStats();
+}
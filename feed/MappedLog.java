@@ -0,0 +1,212 @@
+package feed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class MappedLog implements Closeable {
+	/* An event log file mapped read only, for logs too big to push through
+	 * System.in. A mapping holds at most 2 GB, so the file is cut in chunks
+	 * of up to chunkBytes that end right after a '\n': no line spans two
+	 * chunks, and a chunk can be parsed or scanned on its own. EventParser
+	 * reads the chunks in place, nothing is copied onto the heap.
+	 *
+	 * scanReloads finds the reload lines of the whole file in parallel, one
+	 * task per few MB. It looks at raw lines and does not apply the N cap of
+	 * the header.
+	 */
+	private static final int SCAN_GRAIN = 1 << 22;
+	private FileChannel channel;
+	private ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private ArrayList<Long> offsets = new ArrayList<Long>();
+	private long size;
+	
+	public MappedLog(Path file) throws IOException {
+		this(file, 1 << 30);
+	}
+	
+	public MappedLog(Path file, int chunkBytes) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		size = channel.size();
+		long start = 0;
+		while(start < size) {
+			int len = (int) Math.min(chunkBytes, size - start);
+			ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+			if(start + len < size) {
+				// cut after the last line end; mapping is lazy, this touches only the tail
+				int end = len;
+				while(end > 0 && map.get(end-1) != '\n') end--;
+				if(end == 0) {
+					throw new IOException("line longer than a chunk at offset " + start);
+				}
+				len = end;
+				map = map.slice(0, len);
+			}
+			chunks.add(map);
+			offsets.add(start);
+			start += len;
+		}
+	}
+	
+	public long size() {
+		return size;
+	}
+	
+	public int chunks() {
+		return chunks.size();
+	}
+	
+	public ByteBuffer chunk(int i) {
+		return chunks.get(i);
+	}
+	
+	/* file offset of the first byte of chunk i */
+	public long offset(int i) {
+		return offsets.get(i);
+	}
+	
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	public ReloadIndex scanReloads(int parallelism) {
+		if(chunks.isEmpty()) {
+			return new ReloadIndex();
+		}
+		// the header is no event, start after its line
+		ByteBuffer first = chunks.get(0);
+		int dataStart = skipLine(first, 0, first.limit());
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			ReloadIndex index = new ReloadIndex();
+			for(int i=0; i<chunks.size(); i++) {
+				ByteBuffer buf = chunks.get(i);
+				int from = i == 0 ? dataStart : 0;
+				index.append(pool.invoke(new ScanTask(buf, offsets.get(i), from, buf.limit())));
+			}
+			return index;
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private static int skipLine(ByteBuffer buf, int p, int limit) {
+		// position after the line end at or after p
+		byte c = 0;
+		while(p < limit && (c = buf.get(p)) != '\n' && c != '\r') p++;
+		if(p < limit) p++;
+		if(c == '\r' && p < limit && buf.get(p) == '\n') p++;
+		return p;
+	}
+	
+	private static boolean isLineStart(ByteBuffer buf, int p) {
+		if(p == 0) return true;
+		byte c = buf.get(p-1);
+		return c == '\n' || (c == '\r' && buf.get(p) != '\n');
+	}
+	
+	public static class ReloadIndex {
+		/* file offset and time of every reload line, in file order */
+		private long[] offsets = new long[16];
+		private int[] times = new int[16];
+		private int count;
+		
+		public int getCount() {
+			return count;
+		}
+		
+		public long getOffset(int i) {
+			return offsets[i];
+		}
+		
+		public int getTime(int i) {
+			return times[i];
+		}
+		
+		void add(long offset, int time) {
+			if(count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+				times = Arrays.copyOf(times, count * 2);
+			}
+			offsets[count] = offset;
+			times[count] = time;
+			count++;
+		}
+		
+		void append(ReloadIndex other) {
+			for(int i=0; i<other.count; i++) {
+				add(other.offsets[i], other.times[i]);
+			}
+		}
+	}
+	
+	private static class ScanTask extends RecursiveTask<ReloadIndex> {
+		/* reload lines that start in [from, to) of one chunk */
+		private static final long serialVersionUID = 1L;
+		private ByteBuffer buf;
+		private long base;
+		private int from;
+		private int to;
+		
+		ScanTask(ByteBuffer buf, long base, int from, int to) {
+			this.buf = buf;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+		}
+		
+		protected ReloadIndex compute() {
+			if(to - from > SCAN_GRAIN) {
+				int mid = from + (to - from) / 2;
+				ScanTask right = new ScanTask(buf, base, mid, to);
+				right.fork();
+				ReloadIndex index = new ScanTask(buf, base, from, mid).compute();
+				index.append(right.join());
+				return index;
+			}
+			
+			ReloadIndex index = new ReloadIndex();
+			int limit = buf.limit();
+			int p = from;
+			if(!isLineStart(buf, p)) {
+				p = skipLine(buf, p, limit);
+			}
+			while(p < to) {
+				if(buf.get(p) == 'R' && p+2 < limit && buf.get(p+1) == ' ') {
+					scanTime(index, p);
+				}
+				p = skipLine(buf, p, limit);
+			}
+			return index;
+		}
+		
+		private void scanTime(ReloadIndex index, int start) {
+			// "R t", lines with a bad time are left to the parser to reject
+			int limit = buf.limit();
+			int p = start + 2;
+			boolean negative = false;
+			if(buf.get(p) == '-') {
+				negative = true;
+				p++;
+			}
+			long time = 0;
+			int digits = 0;
+			byte c;
+			while(p < limit && (c = buf.get(p)) >= '0' && c <= '9' && digits < 10) {
+				time = time * 10 + (c - '0');
+				digits++;
+				p++;
+			}
+			if(digits == 0 || time > Integer.MAX_VALUE) return;
+			if(p < limit && (c = buf.get(p)) != ' ' && c != '\n' && c != '\r') return;
+			index.add(base + start, (int) (negative ? -time : time));
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package feed;
+
+public interface MaxPlusKernel {
+	/* One knapsack layer on packed keys, key = score * KEY_SCALE - story count,
+	 * so a larger key is a higher score or, on a score tie, fewer stories.
+	 * next[h] = max(cur[h], cur[h-height] + add) for h >= height, cur[h] below.
+	 * Sets the bit h of pick where the second one wins, ties included so the 
+	 * older story is taken like in DPSolver.calcScore.
+	 */
+	public static final long KEY_SCALE = 1L << 24;
+	
+	void update(long[] cur, long[] next, int H, int height, long add, long[] pick);
+}
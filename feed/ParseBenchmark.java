@@ -0,0 +1,91 @@
+package feed;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+public class ParseBenchmark {
+	/* Parse throughput of EventParser and of BinaryEventReader on the same
+	 * log encoded by BinaryEventLog, against the old readLine + split +
+	 * parseInt path of main, all from bytes in memory so the disk is out of
+	 * it. All sum every field into a checksum, which must match.
+	 *   java feed.ParseBenchmark input.txt [rounds]
+	 */
+	public static void main(String args[]) throws Exception {
+		byte[] data = Files.readAllBytes(Paths.get(args[0]));
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		Path tmp = Files.createTempFile("events", ".bin");
+		BinaryEventLog.encode(new EventParser(new ByteArrayInputStream(data)), tmp);
+		byte[] binary = Files.readAllBytes(tmp);
+		Files.delete(tmp);
+		
+		for(int r=0; r<rounds; r++) {
+			long t0 = System.nanoTime();
+			long split = parseSplit(data);
+			long t1 = System.nanoTime();
+			long bytes = parseEvents(new EventParser(new ByteArrayInputStream(data)));
+			long t2 = System.nanoTime();
+			long bin = parseEvents(new BinaryEventReader(new ByteArrayInputStream(binary)));
+			long t3 = System.nanoTime();
+			if(split != bytes || split != bin) {
+				throw new Exception("checksum mismatch: " + split + " " + bytes + " " + bin);
+			}
+			System.out.println("round " + r + ": split " + report(t1 - t0, data.length)
+					+ ", bytes " + report(t2 - t1, data.length)
+					+ ", binary " + report(t3 - t2, binary.length));
+		}
+	}
+	
+	private static String report(long nanos, int length) {
+		return String.format("%.1f ms %.0f MB/s", nanos / 1e6, length / (nanos / 1e3));
+	}
+	
+	static long parseSplit(byte[] data) throws Exception {
+		BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data)));
+		ArrayList<Event> events = new ArrayList<Event>();
+		String line = br.readLine();
+		String[] nums = line.split(" ");
+		int count = 0, numStory = 0;
+		if(nums == null || nums.length != 3) {
+			throw new Exception("input format wrong.");
+		}
+		int N = Integer.parseInt(nums[0]);
+		while((line = br.readLine()) != null && count < N) {
+			String[] event = line.split(" ");
+			if (event != null && event.length > 0) {
+				if(event[0].equals("S") && event.length >= 4) {
+					events.add(new StoryEvent("S", Integer.parseInt(event[1]),
+							Integer.parseInt(event[2]), Integer.parseInt(event[3]),
+							++numStory));
+				} else if(event[0].equals("R") && event.length >= 2) {
+					events.add(new ReloadEvent("R", Integer.parseInt(event[1])));
+				}
+			}
+			count++;
+		}
+		
+		long sum = 0;
+		for(Event event : events) {
+			sum = sum * 31 + event.getTime();
+			if(event.getType().equals("S")) {
+				StoryEvent story = (StoryEvent) event;
+				sum = sum * 31 + story.getScore() * 7 + story.getHeight();
+			}
+		}
+		return sum;
+	}
+	
+	static long parseEvents(EventSource parser) throws Exception {
+		parser.readHeader();
+		long sum = 0;
+		while(parser.next()) {
+			sum = sum * 31 + parser.getTime();
+			if(parser.getType() == StoryStore.STORY) {
+				sum = sum * 31 + parser.getScore() * 7 + parser.getHeight();
+			}
+		}
+		return sum;
+	}
+}
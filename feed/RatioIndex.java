@@ -0,0 +1,215 @@
+package feed;
+
+import java.util.Arrays;
+
+public class RatioIndex {
+	/* Treap of store positions in the order findUpBound needs them: larger 
+	 * score/height ratio first, and on the same ratio the older story first. 
+	 * Ratios are compared exactly with cross products, not as floats.
+	 * Insert and remove are O(log n) expected, toArray lists the stories in 
+	 * order in O(n), first and next walk as far as the caller wants in 
+	 * O(log n) plus O(1) amortized per node. Nodes live in int arrays and are 
+	 * recycled, so a node id is always smaller than the largest size the 
+	 * index ever had. A subclass can give another order through compare.
+	 */
+	protected StoryStore store;
+	private int[] key;
+	private int[] left;
+	private int[] right;
+	private int[] prio;
+	private int[] stack;
+	private int walkTop;		// first/next: stack depth and node to go left from
+	private int walkCur;
+	private int root;
+	private int size;
+	private int freeList;
+	private int nodeCount;
+	private int seed;
+	private int removed;
+	
+	public RatioIndex(StoryStore store, int capacity) {
+		this.store = store;
+		capacity = Math.max(capacity, 16);
+		key = new int[capacity];
+		left = new int[capacity];
+		right = new int[capacity];
+		prio = new int[capacity];
+		stack = new int[64];
+		root = -1;
+		size = 0;
+		freeList = -1;
+		nodeCount = 0;
+		seed = 0x2545F491;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int capacity() {
+		return key.length;
+	}
+	
+	public int getPos(int node) {
+		return key[node];
+	}
+	
+	public int compare(int posA, int posB) {
+		/* negative if story posA comes before story posB */
+		long lhs = (long) store.getScore(posB) * store.getHeight(posA);
+		long rhs = (long) store.getScore(posA) * store.getHeight(posB);
+		if(lhs != rhs) {
+			return lhs < rhs ? -1 : 1;
+		}
+		return Integer.compare(store.getSid(posA), store.getSid(posB));
+	}
+	
+	public int insert(int pos) {
+		/* add the story at store position pos, return its node */
+		int node = newNode(pos);
+		root = insert(root, node);
+		size++;
+		return node;
+	}
+	
+	public int remove(int pos) {
+		/* remove the story at store position pos, return the node it used */
+		removed = -1;
+		root = remove(root, pos);
+		if(removed >= 0) {
+			size--;
+			left[removed] = freeList;
+			freeList = removed;
+		}
+		return removed;
+	}
+	
+	public void removeNode(int node) {
+		/* remove a node handed out by insert */
+		remove(key[node]);
+	}
+	
+	public int toArray(int[] nodes) {
+		/* in order walk, fill nodes with the node ids and return the count */
+		int count = 0;
+		int top = 0;
+		int cur = root;
+		while(cur >= 0 || top > 0) {
+			while(cur >= 0) {
+				if(top == stack.length) {
+					stack = Arrays.copyOf(stack, top << 1);
+				}
+				stack[top++] = cur;
+				cur = left[cur];
+			}
+			cur = stack[--top];
+			nodes[count++] = cur;
+			cur = right[cur];
+		}
+		return count;
+	}
+	
+	public int first() {
+		/* start an in order walk, return the first node or -1 when empty. An 
+		 * insert, remove or toArray ends the walk. */
+		walkTop = 0;
+		walkCur = root;
+		return next();
+	}
+	
+	public int next() {
+		/* the node after the one first or next returned last, or -1 */
+		while(walkCur >= 0) {
+			if(walkTop == stack.length) {
+				stack = Arrays.copyOf(stack, walkTop << 1);
+			}
+			stack[walkTop++] = walkCur;
+			walkCur = left[walkCur];
+		}
+		if(walkTop == 0) return -1;
+		int node = stack[--walkTop];
+		walkCur = right[node];
+		return node;
+	}
+	
+	private int insert(int t, int node) {
+		if(t < 0) return node;
+		if(compare(key[node], key[t]) < 0) {
+			left[t] = insert(left[t], node);
+			if(prio[left[t]] > prio[t]) {
+				t = rotateRight(t);
+			}
+		} else {
+			right[t] = insert(right[t], node);
+			if(prio[right[t]] > prio[t]) {
+				t = rotateLeft(t);
+			}
+		}
+		return t;
+	}
+	
+	private int remove(int t, int pos) {
+		if(t < 0) return t;
+		int c = key[t] == pos ? 0 : compare(pos, key[t]);
+		if(c < 0) {
+			left[t] = remove(left[t], pos);
+		} else if(c > 0) {
+			right[t] = remove(right[t], pos);
+		} else {
+			removed = t;
+			return merge(left[t], right[t]);
+		}
+		return t;
+	}
+	
+	private int merge(int a, int b) {
+		if(a < 0) return b;
+		if(b < 0) return a;
+		if(prio[a] > prio[b]) {
+			right[a] = merge(right[a], b);
+			return a;
+		}
+		left[b] = merge(a, left[b]);
+		return b;
+	}
+	
+	private int rotateRight(int t) {
+		int l = left[t];
+		left[t] = right[l];
+		right[l] = t;
+		return l;
+	}
+	
+	private int rotateLeft(int t) {
+		int r = right[t];
+		right[t] = left[r];
+		left[r] = t;
+		return r;
+	}
+	
+	private int newNode(int pos) {
+		int node;
+		if(freeList >= 0) {
+			node = freeList;
+			freeList = left[node];
+		} else {
+			if(nodeCount == key.length) {
+				int cap = nodeCount << 1;
+				key = Arrays.copyOf(key, cap);
+				left = Arrays.copyOf(left, cap);
+				right = Arrays.copyOf(right, cap);
+				prio = Arrays.copyOf(prio, cap);
+			}
+			node = nodeCount++;
+		}
+		// xorshift for the heap priority
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		key[node] = pos;
+		left[node] = -1;
+		right[node] = -1;
+		prio[node] = seed;
+		return node;
+	}
+}
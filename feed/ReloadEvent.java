@@ -0,0 +1,7 @@
+package feed;
+
+public class ReloadEvent extends Event {
+	public ReloadEvent(String t, int time) {
+		super(t, time);
+	}
+}
@@ -0,0 +1,12 @@
+package feed;
+
+import java.io.IOException;
+
+public interface ResultSink {
+	/* Where the answers of the reloads go, one "score size sid..." line per 
+	 * reload. A sink may hold lines back until flush. 
+	 */
+	void write(FeedResult result) throws IOException;
+	
+	void flush() throws IOException;
+}
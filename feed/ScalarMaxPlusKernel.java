@@ -0,0 +1,17 @@
+package feed;
+
+class ScalarMaxPlusKernel implements MaxPlusKernel {
+	/* the plain loop, used when the Vector API kernel is not there */
+	public void update(long[] cur, long[] next, int H, int height, long add, long[] pick) {
+		System.arraycopy(cur, 0, next, 0, Math.min(height, H+1));
+		for(int h=height; h<=H; h++) {
+			long with = cur[h-height] + add;
+			if(with >= cur[h]) {
+				next[h] = with;
+				pick[h >>> 6] |= 1L << h;
+			} else {
+				next[h] = cur[h];
+			}
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package feed;
+
+import java.util.Arrays;
+
+public class ScoreDPSolver implements FeedSolver {
+	/* The dual of the DPSolver table, for pages much higher than the scores
+	 * are big: the least height of exactly c stories scoring exactly s,
+	 * minHeight[c][s], over the stories of the window. The best answer is the
+	 * highest s with some minHeight[c][s] <= H, with the least such c.
+	 *
+	 * The count needs a dimension of its own, one least height per score
+	 * cannot tell fewer stories from more. It is bounded by maxCount, the
+	 * most stories that fit on the page, and s by the sum of the maxCount
+	 * best scores, so a table has (maxCount+1)*(maxScore+1) cells against the
+	 * H+1 of a DPSolver row. Stories scoring 0 or less are never in a best
+	 * answer and are left out.
+	 *
+	 * For the same smallest sid list as DPSolver, one table is kept per story
+	 * for the stories from it to the newest one, filled from the newest, and
+	 * the walk from the oldest story takes a story whenever what is left to
+	 * pick can still be made of newer stories within the height left.
+	 * Without sids only one table is kept. When the tables would be more than 
+	 * MAX_CELLS ints, a reload of its own goes to a DPSolver instead.
+	 */
+	/* a DPSolver hands a reload over when the cells times this fit in H+1; a
+	 * cell costs a bit more than a DPSolver height, MAX_CELLS keeps the memory */
+	public static final int AUTO_FACTOR = 4;
+	public static final long MAX_CELLS = 1L << 24;	// table ints of one reload
+	static final int INF = Integer.MAX_VALUE;
+	private StoryStore store;
+	private FeedResult last;
+	private boolean withSids;
+	private DPSolver fallback;	// made on the first reload too big for the tables
+	private long fallbacks;
+	private int[] table;		// row j at j*cells: stories j.. of the window; row numStory is empty
+	private int[] scores;		// scratch for the bounds
+	private int[] heights;
+	private int[] picked;
+	private int numStory;
+	private int maxCount;
+	private int maxScore;
+	private long cells;
+	private long peakBytes;
+	private long reloads;
+	private int H;
+	
+	public ScoreDPSolver(StoryStore store, int H) {
+		this(store, H, true);
+	}
+	
+	public ScoreDPSolver(StoryStore store, int H, boolean withSids) {
+		this.store = store;
+		this.H = H;
+		this.withSids = withSids;
+		table = new int[0];
+		scores = new int[16];
+		heights = new int[16];
+		picked = new int[16];
+		last = new FeedResult(0, 0, new int[0]);
+	}
+	
+	public void addStory(int pos) {
+	}
+	
+	public boolean expireStory(int pos) {
+		return last.contains(store.getSid(pos));
+	}
+	
+	public FeedResult reload() {
+		bound();
+		if(fits()) {
+			return solve();
+		}
+		if(fallback == null) {
+			fallback = new DPSolver(store, H, withSids ? DPSolver.PICK_BITS : DPSolver.SCORE_ONLY);
+		}
+		fallbacks++;
+		last = fallback.reload();
+		return last;
+	}
+	
+	/* true when the tables are much smaller than a DPSolver row and small
+	 * enough to keep; the bounds are kept for solve() */
+	public boolean cheaper() {
+		bound();
+		return cells * AUTO_FACTOR <= H + 1L && fits();
+	}
+	
+	private boolean fits() {
+		long rows = withSids ? numStory + 1L : 1;
+		return cells <= MAX_CELLS && rows * cells <= MAX_CELLS;
+	}
+	
+	private void bound() {
+		// most stories that fit are the lowest ones, the best score of that many the highest ones
+		int head = store.head();
+		numStory = store.size();
+		if(scores.length < numStory) {
+			scores = new int[Math.max(numStory, scores.length << 1)];
+			heights = new int[scores.length];
+		}
+		int n = 0;
+		for(int j=0; j<numStory; j++) {
+			int pos = head + j;
+			if(!store.isActive(pos) || store.getScore(pos) <= 0) continue;
+			scores[n] = store.getScore(pos);
+			heights[n] = store.getHeight(pos);
+			n++;
+		}
+		Arrays.sort(heights, 0, n);
+		Arrays.sort(scores, 0, n);
+		long room = H;
+		maxCount = 0;
+		while(maxCount < n && heights[maxCount] <= room) {
+			room -= heights[maxCount];
+			maxCount++;
+		}
+		long sum = 0;
+		for(int k=0; k<maxCount; k++) {
+			sum += scores[n - 1 - k];
+		}
+		maxScore = (int) Math.min(sum, Integer.MAX_VALUE - 1);
+		cells = (long) (maxCount + 1) * (maxScore + 1);
+	}
+	
+	/* the reload with the bounds of the last bound(), which fits() */
+	FeedResult solve() {
+		reloads++;
+		int head = store.head();
+		int width = maxScore + 1;
+		int rowSize = (int) cells;
+		int rows = withSids ? numStory + 1 : 1;
+		if(table.length < (long) rows * rowSize) {
+			table = new int[(int) ((long) rows * rowSize)];
+			peakBytes = Math.max(peakBytes, 4L * table.length);
+		}
+		int empty = withSids ? numStory * rowSize : 0;
+		Arrays.fill(table, empty, empty + rowSize, INF);
+		table[empty] = 0;
+		
+		// newest to oldest, row j from row j+1, or in place without sids
+		int countReach = 0;
+		int scoreReach = 0;
+		for(int j=numStory-1; j>=0; j--) {
+			int pos = head + j;
+			int from = withSids ? (j + 1) * rowSize : 0;
+			int to = withSids ? j * rowSize : 0;
+			if(withSids) {
+				System.arraycopy(table, from, table, to, rowSize);
+			}
+			int curScore = store.getScore(pos);
+			int curHeight = store.getHeight(pos);
+			if(!store.isActive(pos) || curScore <= 0) continue;
+			countReach = Math.min(maxCount, countReach + 1);
+			scoreReach = (int) Math.min(maxScore, (long) scoreReach + curScore);
+			for(int c=countReach; c>=1; c--) {
+				int cur = to + c * width;
+				int prev = from + (c - 1) * width - curScore;
+				for(int s=scoreReach; s>=curScore; s--) {
+					int below = table[prev + s];
+					if(below <= H - curHeight && below + curHeight < table[cur + s]) {
+						table[cur + s] = below + curHeight;
+					}
+				}
+			}
+		}
+		
+		// row 0 holds the whole window: highest score that fits, fewest stories
+		int bestScore = -1;
+		int bestCount = 0;
+		for(int s=scoreReach; s>=0 && bestScore < 0; s--) {
+			for(int c=0; c<=countReach; c++) {
+				if(table[c * width + s] <= H) {
+					bestScore = s;
+					bestCount = c;
+					break;
+				}
+			}
+		}
+		if(!withSids) {
+			last = new FeedResult(bestScore, bestCount, (int[]) null);
+			return last;
+		}
+		
+		if(picked.length < bestCount) {
+			picked = new int[Math.max(bestCount, picked.length << 1)];
+		}
+		int size = 0;
+		int count = bestCount;
+		int score = bestScore;
+		long room = H;
+		for(int j=0; j<numStory && count > 0; j++) {
+			int pos = head + j;
+			int curScore = store.getScore(pos);
+			int curHeight = store.getHeight(pos);
+			if(!store.isActive(pos) || curScore <= 0 || curScore > score || curHeight > room) continue;
+			int rest = table[(j + 1) * rowSize + (count - 1) * width + score - curScore];
+			if(rest <= room - curHeight) {
+				picked[size++] = store.getSid(pos);
+				count--;
+				score -= curScore;
+				room -= curHeight;
+			}
+		}
+		last = new FeedResult(bestScore, bestCount, Arrays.copyOf(picked, size));
+		return last;
+	}
+	
+	public long getReloads() {
+		return reloads;
+	}
+	
+	public String getStats() {
+		return "dp-byscore: reloads: " + reloads + " height dp fallbacks: " + fallbacks + 
+				" last max count: " + maxCount + " max score: " + maxScore + 
+				" peak table bytes: " + peakBytes;
+	}
+}
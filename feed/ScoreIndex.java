@@ -0,0 +1,19 @@
+package feed;
+
+public class ScoreIndex extends RatioIndex {
+	/* The RatioIndex treap ordered by score instead: higher score first, and 
+	 * on the same score the older story first.
+	 */
+	public ScoreIndex(StoryStore store, int capacity) {
+		super(store, capacity);
+	}
+	
+	public int compare(int posA, int posB) {
+		/* negative if story posA comes before story posB */
+		int c = Integer.compare(store.getScore(posB), store.getScore(posA));
+		if(c != 0) {
+			return c;
+		}
+		return Integer.compare(store.getSid(posA), store.getSid(posB));
+	}
+}
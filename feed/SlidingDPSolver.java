@@ -0,0 +1,172 @@
+package feed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class SlidingDPSolver implements FeedSolver {
+	/* Knapsack DP over the window kept as a queue made of two stacks of DP 
+	 * layers, so a story is pushed and expired in amortized O(H) instead of 
+	 * rebuilding the whole window when the oldest picked story leaves it.
+	 * 
+	 * back:  stories pushed in arrival order, layer k is the DP over the 
+	 *        back stories 0..k (prefix).
+	 * front: when a story expires and front is empty, all back stories are 
+	 *        moved to front from the newest to the oldest, so layer k is the 
+	 *        DP over the front stories from k to the newest one (suffix) and 
+	 *        the oldest story is on top where it can be popped.
+	 * A reload finds the best split of the page between the two top layers 
+	 * in O(H), then walks the pick rows of that split once.
+	 * 
+	 * Not an exact engine in the FeedSolver sense: score and story count are 
+	 * always the best ones, but on a tie of both the sid list may differ from 
+	 * the one of DPSolver. The front half is walked from its oldest story and 
+	 * keeps the smallest sids, the back half is a prefix DP that can only 
+	 * keep its older stories on a full tie, and the first best split wins 
+	 * over later ones that tie it. FeedPipeline only builds it when asked 
+	 * for as dp-window:relaxed.
+	 */
+	private ArrayList<DPLayer> front;
+	private ArrayList<DPLayer> back;
+	private ArrayList<DPLayer> pool;
+	private DPLayer empty;
+	private int layerCount;
+	private StoryStore store;
+	private FeedResult last;
+	private int H;
+	
+	public SlidingDPSolver(StoryStore store, int H) {
+		this.store = store;
+		this.H = H;
+		front = new ArrayList<DPLayer>();
+		back = new ArrayList<DPLayer>();
+		pool = new ArrayList<DPLayer>();
+		empty = new DPLayer(H);
+	}
+	
+	public void addStory(int pos) {
+		DPLayer prev = back.size() > 0 ? back.get(back.size()-1) : empty;
+		// on a full tie keep the older stories of the back half
+		back.add(calcLayer(prev, pos, false));
+	}
+	
+	public boolean expireStory(int pos) {
+		if(front.size() == 0) {
+			// move the back stories to front, from the newest to the oldest
+			DPLayer prev = empty;
+			for(int i=back.size()-1; i>=0; i--) {
+				DPLayer layer = back.get(i);
+				prev = calcLayer(prev, layer.pos, true);
+				front.add(prev);
+				pool.add(layer);
+			}
+			back.clear();
+		}
+		pool.add(front.remove(front.size()-1));
+		return last != null && last.contains(store.getSid(pos));
+	}
+	
+	public FeedResult reload() {
+		DPLayer f = front.size() > 0 ? front.get(front.size()-1) : empty;
+		DPLayer b = back.size() > 0 ? back.get(back.size()-1) : empty;
+		int bestScore = -1;
+		int bestNum = 0;
+		int bestSplit = 0;
+		
+		// val is monotone in h, so only the first height of each front value 
+		// needs to be combined with the back half
+		for(int a=0; a<=H; a++) {
+			if(a > 0 && f.val[a] == f.val[a-1] && f.num[a] == f.num[a-1]) continue;
+			int score = f.val[a] + b.val[H-a];
+			int num = f.num[a] + b.num[H-a];
+			if(score > bestScore || (score == bestScore && num < bestNum)) {
+				bestScore = score;
+				bestNum = num;
+				bestSplit = a;
+			}
+		}
+		
+		// get the stories picked.
+		int[] sids = new int[bestNum];
+		int size = 0;
+		int hRemaining = bestSplit;
+		for(int k=front.size()-1; k>=0 && hRemaining > 0; k--) {
+			DPLayer layer = front.get(k);
+			if(layer.pick[hRemaining]) {
+				sids[size++] = store.getSid(layer.pos);
+				hRemaining -= store.getHeight(layer.pos);
+			}
+		}
+		int backStart = size;
+		hRemaining = H - bestSplit;
+		for(int k=back.size()-1; k>=0 && hRemaining > 0; k--) {
+			DPLayer layer = back.get(k);
+			if(layer.pick[hRemaining]) {
+				sids[size++] = store.getSid(layer.pos);
+				hRemaining -= store.getHeight(layer.pos);
+			}
+		}
+		// back stories were collected from the newest one
+		for(int i=backStart, j=size-1; i<j; i++, j--) {
+			int tmp = sids[i];
+			sids[i] = sids[j];
+			sids[j] = tmp;
+		}
+		
+		last = new FeedResult(bestScore, bestNum, sids);
+		return last;
+	}
+	
+	public String getStats() {
+		return "dp-window: layers: " + layerCount + " peak layer bytes: " + 
+				9L * (H+1) * (layerCount + 1);
+	}
+	
+	private DPLayer calcLayer(DPLayer prev, int pos, boolean pickOnTie) {
+		/* val[h] = max{prev.val[h], prev.val[h-hi] + si}, with the fewer 
+		 * stories on a score tie.
+		 */
+		DPLayer layer = null;
+		if(pool.size() > 0) {
+			layer = pool.remove(pool.size()-1);
+		} else {
+			layer = new DPLayer(H);
+			layerCount++;
+		}
+		int[] val = layer.val;
+		int[] num = layer.num;
+		boolean[] pick = layer.pick;
+		int curScore = store.getScore(pos);
+		int curHeight = store.getHeight(pos);
+		
+		layer.pos = pos;
+		System.arraycopy(prev.val, 0, val, 0, H+1);
+		System.arraycopy(prev.num, 0, num, 0, H+1);
+		Arrays.fill(pick, false);
+		for(int h=H; h>=curHeight; h--) {
+			int subHeight = h - curHeight;
+			int score = prev.val[subHeight] + curScore;
+			int storyNum = prev.num[subHeight] + 1;
+			if(val[h] < score || (val[h] == score && 
+					(num[h] > storyNum || (pickOnTie && num[h] == storyNum)))) {
+				val[h] = score;
+				num[h] = storyNum;
+				pick[h] = true;
+			}
+		}
+		
+		return layer;
+	}
+}
+
+class DPLayer {
+	int pos;
+	int[] val;
+	int[] num;
+	boolean[] pick;
+	
+	public DPLayer(int H) {
+		val = new int[H+1];
+		num = new int[H+1];
+		pick = new boolean[H+1];
+	}
+}
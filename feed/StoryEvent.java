@@ -0,0 +1,31 @@
+package feed;
+
+public class StoryEvent extends Event {
+	private int score;
+	private int height;
+	private int sid;
+	private float ratio;
+	public StoryEvent(String t, int time, int score, int height, int sid) {
+		super(t, time);
+		this.score = score;
+		this.height = height;
+		this.sid = sid;
+		ratio = ((float)score) / height;
+	}
+	
+	public int getScore() {
+		return score;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public int getSid() {
+		return sid;
+	}
+	
+	public float getRatio() {
+		return ratio;
+	}
+}
@@ -0,0 +1,127 @@
+package feed;
+
+public class StoryStore {
+	/* Struct of arrays for the live window. A story is addressed by its 
+	 * position, the number of stories added before it, and lives in slot 
+	 * (pos & mask) of a ring buffer, so positions stay valid when the buffer 
+	 * grows and a solver can keep them instead of StoryEvent references.
+	 */
+	public static final byte STORY = 'S';
+	public static final byte RELOAD = 'R';
+	private byte[] type;
+	private int[] time;
+	private int[] score;
+	private int[] height;
+	private int[] sid;
+	private boolean[] active;	// false when a filter keeps the story from the solver
+	private int mask;
+	private int head;
+	private int tail;
+	
+	public StoryStore(int capacity) {
+		int cap = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+		allocate(cap);
+		head = 0;
+		tail = 0;
+	}
+	
+	public int add(byte t, int time, int score, int height, int sid) {
+		/* append a story at the tail, return its position */
+		if(tail - head > mask) {
+			grow();
+		}
+		int slot = tail & mask;
+		this.type[slot] = t;
+		this.time[slot] = time;
+		this.score[slot] = score;
+		this.height[slot] = height;
+		this.sid[slot] = sid;
+		this.active[slot] = true;
+		return tail++;
+	}
+	
+	public int poll() {
+		/* remove the oldest story, return its position */
+		return head++;
+	}
+	
+	public int head() {
+		return head;
+	}
+	
+	public int tail() {
+		return tail;
+	}
+	
+	public int size() {
+		return tail - head;
+	}
+	
+	public int capacity() {
+		return mask + 1;
+	}
+	
+	public byte getType(int pos) {
+		return type[pos & mask];
+	}
+	
+	public int getTime(int pos) {
+		return time[pos & mask];
+	}
+	
+	public int getScore(int pos) {
+		return score[pos & mask];
+	}
+	
+	public int getHeight(int pos) {
+		return height[pos & mask];
+	}
+	
+	public int getSid(int pos) {
+		return sid[pos & mask];
+	}
+	
+	public boolean isActive(int pos) {
+		return active[pos & mask];
+	}
+	
+	public void setActive(int pos, boolean a) {
+		active[pos & mask] = a;
+	}
+	
+	public float getRatio(int pos) {
+		return ((float) score[pos & mask]) / height[pos & mask];
+	}
+	
+	private void grow() {
+		byte[] oldType = type;
+		int[] oldTime = time;
+		int[] oldScore = score;
+		int[] oldHeight = height;
+		int[] oldSid = sid;
+		boolean[] oldActive = active;
+		int oldMask = mask;
+		
+		allocate((mask + 1) << 1);
+		for(int pos=head; pos<tail; pos++) {
+			int from = pos & oldMask;
+			int to = pos & mask;
+			type[to] = oldType[from];
+			time[to] = oldTime[from];
+			score[to] = oldScore[from];
+			height[to] = oldHeight[from];
+			sid[to] = oldSid[from];
+			active[to] = oldActive[from];
+		}
+	}
+	
+	private void allocate(int cap) {
+		type = new byte[cap];
+		time = new int[cap];
+		score = new int[cap];
+		height = new int[cap];
+		sid = new int[cap];
+		active = new boolean[cap];
+		mask = cap - 1;
+	}
+}
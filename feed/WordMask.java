@@ -0,0 +1,110 @@
+package feed;
+
+import java.util.Arrays;
+
+public class WordMask {
+	/* Bit mask over the positions of a window, 64 positions per long word.
+	 * Unlike java.util.BitSet it never shrinks or reallocates while the search
+	 * runs, and copy/clear work on whole words. previousSetBit and nextSetBit 
+	 * use Long.numberOfLeadingZeros/numberOfTrailingZeros, which the JIT turns 
+	 * into single instructions.
+	 */
+	private long[] words;
+	
+	public WordMask(int capacity) {
+		words = new long[wordIndex(Math.max(capacity, 1) - 1) + 1];
+	}
+	
+	public void ensureCapacity(int capacity) {
+		int need = wordIndex(Math.max(capacity, 1) - 1) + 1;
+		if(need > words.length) {
+			words = Arrays.copyOf(words, Math.max(need, words.length << 1));
+		}
+	}
+	
+	public boolean get(int pos) {
+		return (words[pos >>> 6] & (1L << pos)) != 0;
+	}
+	
+	public void set(int pos) {
+		words[pos >>> 6] |= 1L << pos;
+	}
+	
+	public void clear(int pos) {
+		words[pos >>> 6] &= ~(1L << pos);
+	}
+	
+	public void clear(int from, int to) {
+		/* clear the positions in [from, to) */
+		if(from >= to) return;
+		int startWord = wordIndex(from);
+		int endWord = wordIndex(to - 1);
+		long firstMask = -1L << from;
+		long lastMask = -1L >>> -to;
+		if(startWord == endWord) {
+			words[startWord] &= ~(firstMask & lastMask);
+			return;
+		}
+		words[startWord] &= ~firstMask;
+		for(int i=startWord+1; i<endWord; i++) {
+			words[i] = 0;
+		}
+		words[endWord] &= ~lastMask;
+	}
+	
+	public void copyFrom(WordMask other, int length) {
+		/* copy positions [0, length) of other */
+		ensureCapacity(length);
+		System.arraycopy(other.words, 0, words, 0, wordIndex(Math.max(length, 1) - 1) + 1);
+	}
+	
+	public int nextSetBit(int fromIdx, int length) {
+		/* first set position in [fromIdx, length), or -1 */
+		if(fromIdx >= length) return -1;
+		int u = wordIndex(fromIdx);
+		int last = wordIndex(length - 1);
+		long word = words[u] & (-1L << fromIdx);
+		while(true) {
+			if(word != 0) {
+				int pos = (u << 6) + Long.numberOfTrailingZeros(word);
+				return pos < length ? pos : -1;
+			}
+			if(++u > last) return -1;
+			word = words[u];
+		}
+	}
+	
+	public int nextDifferentBit(WordMask other, int fromIdx, int length) {
+		/* first position in [fromIdx, length) set in only one of the masks, or -1 */
+		if(fromIdx >= length) return -1;
+		int u = wordIndex(fromIdx);
+		int last = wordIndex(length - 1);
+		long word = (words[u] ^ other.words[u]) & (-1L << fromIdx);
+		while(true) {
+			if(word != 0) {
+				int pos = (u << 6) + Long.numberOfTrailingZeros(word);
+				return pos < length ? pos : -1;
+			}
+			if(++u > last) return -1;
+			word = words[u] ^ other.words[u];
+		}
+	}
+	
+	public int previousSetBit(int fromIdx) {
+		/* last set position in [0, fromIdx], or -1 */
+		if(fromIdx < 0) return -1;
+		int u = wordIndex(fromIdx);
+		long word = words[u] & (-1L >>> -(fromIdx + 1));
+		while(true) {
+			if(word != 0) {
+				return (u << 6) + 63 - Long.numberOfLeadingZeros(word);
+			}
+			if(u-- == 0) return -1;
+			word = words[u];
+		}
+	}
+	
+	private static int wordIndex(int pos) {
+		return pos >>> 6;
+	}
+}
@@ -0,0 +1,54 @@
+package feed;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorKernel implements MaxPlusKernel {
+	/* MaxPlusKernel on the Vector API, as many heights per instruction as 
+	 * the widest long vector of the host (4 on AVX2, 8 on AVX-512). The 
+	 * compare mask is both the blend selector and the pick bits of those 
+	 * heights. Kept out of the feed source root because it needs
+	 *   javac --add-modules jdk.incubator.vector
+	 * and the same flag for java, without it DPSolver falls back to 
+	 * ScalarMaxPlusKernel.
+	 */
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+	/* 1L << lane per lane; VectorMask.toLong is not intrinsified on 17, 
+	 * blend + OR reduction is, and is what turns the mask into pick bits */
+	private static final LongVector LANE_BITS = LongVector.broadcast(SPECIES, 1L)
+			.lanewise(VectorOperators.LSHL, LongVector.zero(SPECIES).addIndex(1));
+	private static final LongVector ZERO = LongVector.zero(SPECIES);
+	
+	public void update(long[] cur, long[] next, int H, int height, long add, long[] pick) {
+		int lanes = SPECIES.length();
+		int h = height;
+		
+		System.arraycopy(cur, 0, next, 0, Math.min(height, H+1));
+		for(; h + lanes <= H + 1; h += lanes) {
+			LongVector skip = LongVector.fromArray(SPECIES, cur, h);
+			LongVector with = LongVector.fromArray(SPECIES, cur, h - height).add(add);
+			VectorMask<Long> take = with.compare(VectorOperators.GE, skip);
+			skip.blend(with, take).intoArray(next, h);
+			long bits = ZERO.blend(LANE_BITS, take).reduceLanes(VectorOperators.OR);
+			if(bits != 0) {
+				int word = h >>> 6;
+				int offset = h & 63;
+				pick[word] |= bits << offset;
+				if(offset + lanes > 64) {
+					pick[word+1] |= bits >>> (64 - offset);
+				}
+			}
+		}
+		for(; h<=H; h++) {
+			long with = cur[h-height] + add;
+			if(with >= cur[h]) {
+				next[h] = with;
+				pick[h >>> 6] |= 1L << h;
+			} else {
+				next[h] = cur[h];
+			}
+		}
+	}
+}